@@ -2,8 +2,10 @@ package com.littletomato;
 
 import com.littletomato.warehouse.ClientWarehouseCache;
 import com.littletomato.warehouse.WarehousePayloads;
+import com.littletomato.warehouse.WarehouseScreen;
 import net.fabricmc.api.ClientModInitializer;
 import com.littletomato.warehouse.WarehouseKeyMapping;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,11 +21,22 @@ public class LittleTomatoClient implements ClientModInitializer {
 
         WarehouseKeyMapping.registerKeyBinding(MOD_ID);
 
-        ClientPlayNetworking.registerGlobalReceiver(WarehousePayloads.WarehouseDataS2CPayload.ID,
+        // 仓库界面只接收当前查询的窗口，回复过期的查询会被丢弃
+        ClientPlayNetworking.registerGlobalReceiver(WarehousePayloads.WarehousePageS2CPayload.ID,
                 (payload, context) -> {
                     context.client().execute(() -> {
-                        ClientWarehouseCache.update(payload.items(), payload.lastUpdated());
+                        ClientWarehouseCache.update(payload);
                     });
                 });
+
+        // 服务端操作队列已满，暂缓发送
+        ClientPlayNetworking.registerGlobalReceiver(WarehousePayloads.SlowDownS2CPayload.ID,
+                (payload, context) -> {
+                    context.client().execute(() -> {
+                        WarehouseScreen.slowDown(payload.retryAfterTicks());
+                    });
+                });
+
+        ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> client.execute(ClientWarehouseCache::clear));
     }
 }
\ No newline at end of file
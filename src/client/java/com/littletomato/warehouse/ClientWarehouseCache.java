@@ -1,28 +1,76 @@
 package com.littletomato.warehouse;
 
-import net.minecraft.world.item.Item;
-
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
+/**
+ * 客户端只缓存仓库界面当前查询的一段窗口，大小与仓库总量无关
+ */
 public class ClientWarehouseCache {
-    private static Map<Item, Integer> items = new HashMap<>();
+    private static int requestId = 0;
+    private static long revision = -1;
     private static long lastUpdated = -1;
+    // 符合当前查询条件的总条数
+    private static int total = 0;
+    private static int offset = 0;
+    private static List<WarehousePayloads.PageEntry> entries = List.of();
+
+    /**
+     * 为新的查询分配编号，之前查询的回复会被丢弃
+     */
+    public static int nextRequestId() {
+        return ++requestId;
+    }
+
+    /**
+     * 用服务端推送的窗口替换缓存
+     *
+     * @return 回复属于已被替换的查询时返回 false
+     */
+    public static boolean update(WarehousePayloads.WarehousePageS2CPayload page) {
+        if (page.requestId() != requestId) {
+            return false;
+        }
+        revision = page.revision();
+        lastUpdated = page.lastUpdated();
+        total = page.total();
+        offset = page.offset();
+        entries = page.entries();
+        return true;
+    }
+
+    public static void clear() {
+        revision = -1;
+        lastUpdated = -1;
+        total = 0;
+        offset = 0;
+        entries = List.of();
+    }
+
+    /**
+     * 第 index 条（从 0 开始），不在当前窗口内时返回 null
+     */
+    public static WarehousePayloads.PageEntry getEntry(int index) {
+        int i = index - offset;
+        return i >= 0 && i < entries.size() ? entries.get(i) : null;
+    }
 
-    public static void update(Map<Item, Integer> newItems, long timestamp) {
-        items = newItems;
-        lastUpdated = timestamp;
+    /**
+     * 当前窗口是否包含 [from, to) 中所有存在的条目
+     */
+    public static boolean covers(int from, int to) {
+        int end = Math.min(to, total);
+        return from >= offset && end <= offset + entries.size() || from >= end;
     }
 
-    public static Map<Item, Integer> getItems() {
-        return items;
+    public static long getRevision() {
+        return revision;
     }
 
     public static long getLastUpdated() {
         return lastUpdated;
     }
 
-    public static int getTypeCount() {
-        return items.size();
+    public static int getTotal() {
+        return total;
     }
-}
\ No newline at end of file
+}
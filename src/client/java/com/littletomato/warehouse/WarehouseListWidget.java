@@ -0,0 +1,164 @@
+package com.littletomato.warehouse;
+
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.client.gui.Font;
+import net.minecraft.client.gui.GuiGraphics;
+import net.minecraft.network.chat.Component;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * 虚拟化的仓库列表：滚动范围按查询结果总数计算，只绘制可见范围内的行，行数据取自 {@link ClientWarehouseCache}
+ * 中的当前窗口，尚未加载的行显示占位符。
+ * 每行的展示用 ItemStack、名称和数量文字（含宽度）都会缓存，数量变化时才重新生成文字。
+ */
+public class WarehouseListWidget {
+
+    public static final int ENTRY_HEIGHT = 20;
+
+    private static final int TEXT_COLOR_WHITE = 0xFFFFFFFF;
+    private static final int TEXT_COLOR_GRAY = 0xFFAAAAAA;
+    private static final String PLACEHOLDER = "...";
+    // 行缓存超过该数量时清空，避免长时间翻阅后无限增长
+    private static final int MAX_CACHED_ROWS = 1024;
+
+    private static final class Row {
+        final ItemStack stack;
+        final Component name;
+        long count = -1;
+        String countText;
+        int countWidth;
+
+        Row(Item item) {
+            this.stack = new ItemStack(item);
+            this.name = item.getName();
+        }
+    }
+
+    private final Font font;
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+
+    private double scrollAmount = 0;
+    private int total = 0;
+
+    private final Reference2ObjectOpenHashMap<Item, Row> rows = new Reference2ObjectOpenHashMap<>();
+    // 序号文字 "1." "2." ... 按需扩展
+    private String[] indexLabels = new String[0];
+
+    public WarehouseListWidget(Font font) {
+        this.font = font;
+    }
+
+    public void setBounds(int left, int top, int right, int bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+        clampScroll();
+    }
+
+    public void setTotal(int total) {
+        if (this.total == total) return;
+        this.total = total;
+        clampScroll();
+    }
+
+    public void resetScroll() {
+        this.scrollAmount = 0;
+    }
+
+    public void scroll(double amount) {
+        this.scrollAmount -= amount;
+        clampScroll();
+    }
+
+    /**
+     * 第一个可见行的序号
+     */
+    public int getFirstVisibleIndex() {
+        return (int) scrollAmount / ENTRY_HEIGHT;
+    }
+
+    /**
+     * 可见区域最多容纳的行数（含上下各半行）
+     */
+    public int getVisibleRowCount() {
+        return (bottom - top) / ENTRY_HEIGHT + 2;
+    }
+
+    public boolean isMouseOver(double mouseX, double mouseY) {
+        return mouseX >= left && mouseX < right && mouseY >= top && mouseY <= bottom;
+    }
+
+    /**
+     * 鼠标所在行对应的条目，O(1) 计算，不在列表上或该行尚未加载时返回 null
+     */
+    public WarehousePayloads.PageEntry getEntryAt(double mouseX, double mouseY) {
+        if (!isMouseOver(mouseX, mouseY)) return null;
+        int index = (int) ((mouseY - top + scrollAmount) / ENTRY_HEIGHT);
+        return index >= 0 && index < total ? ClientWarehouseCache.getEntry(index) : null;
+    }
+
+    public void render(GuiGraphics graphics) {
+        int scroll = (int) scrollAmount;
+        int first = scroll / ENTRY_HEIGHT;
+        int last = Math.min(total, (scroll + (bottom - top)) / ENTRY_HEIGHT + 1);
+
+        if (rows.size() > MAX_CACHED_ROWS) {
+            rows.clear();
+        }
+
+        graphics.enableScissor(left, top, right, bottom);
+        for (int i = first; i < last; i++) {
+            int y = top + i * ENTRY_HEIGHT - scroll;
+
+            // 1. 绘制序号
+            graphics.drawString(this.font, getIndexLabel(i), left + 15, y + 6, TEXT_COLOR_GRAY, false);
+
+            WarehousePayloads.PageEntry entry = ClientWarehouseCache.getEntry(i);
+            if (entry == null) {
+                // 该行所在的窗口还在加载
+                graphics.drawString(this.font, PLACEHOLDER, left + 55, y + 6, TEXT_COLOR_GRAY, false);
+                continue;
+            }
+
+            Row row = getRow(entry.item(), entry.count());
+            // 2. 绘制物品图标
+            graphics.renderItem(row.stack, left + 35, y + 2);
+            // 3. 先绘制数量 (灰色)，再绘制物品名称 (白色)
+            graphics.drawString(this.font, row.countText, left + 55, y + 6, TEXT_COLOR_GRAY, false);
+            graphics.drawString(this.font, row.name, left + 55 + row.countWidth, y + 6, TEXT_COLOR_WHITE, false);
+        }
+        graphics.disableScissor();
+    }
+
+    private Row getRow(Item item, long count) {
+        Row row = rows.computeIfAbsent(item, Row::new);
+        if (row.count != count) {
+            row.count = count;
+            row.countText = count + " x ";
+            row.countWidth = this.font.width(row.countText);
+        }
+        return row;
+    }
+
+    private String getIndexLabel(int index) {
+        if (index >= indexLabels.length) {
+            String[] grown = new String[Math.max(index + 1, indexLabels.length * 2)];
+            System.arraycopy(indexLabels, 0, grown, 0, indexLabels.length);
+            indexLabels = grown;
+        }
+        if (indexLabels[index] == null) {
+            indexLabels[index] = (index + 1) + ".";
+        }
+        return indexLabels[index];
+    }
+
+    private void clampScroll() {
+        int maxScroll = Math.max(0, total * ENTRY_HEIGHT - (bottom - top));
+        this.scrollAmount = Math.max(0, Math.min(this.scrollAmount, maxScroll));
+    }
+}
@@ -2,6 +2,8 @@ package com.littletomato.warehouse;
 
 import com.mojang.blaze3d.platform.InputConstants; // 必须导入
 import com.mojang.blaze3d.platform.Window;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiGraphics;
@@ -18,15 +20,11 @@ import org.lwjgl.glfw.GLFW; // 必须导入
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 public class WarehouseScreen extends Screen {
 
-    private double scrollAmount = 0;
-    private final int ENTRY_HEIGHT = 20;
     private final int LIST_TOP = 65;
     private final int LIST_BOTTOM_MARGIN = 45;
 
@@ -37,8 +35,29 @@ public class WarehouseScreen extends Screen {
             DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
                     .withZone(ZoneId.systemDefault());
 
+    private record Query(String filter, WarehouseQueryIndex.SortKey sort, int offset) {
+    }
+
     private EditBox searchBox;
     private Button storeAllButton;
+    private Button sortButton;
+    private WarehouseListWidget listWidget;
+
+    private WarehouseQueryIndex.SortKey sortKey = WarehouseQueryIndex.SortKey.NAME;
+    // 最近一次发出的查询，用于避免回复到达前重复请求同一窗口
+    private Query lastQuery = null;
+
+    // 缓存 "Updated: ..." 文字，时间戳变化时才重新格式化
+    private long updatedLabelTimestamp = Long.MIN_VALUE;
+    private String updatedLabel = "";
+
+    // 服务端要求降速时，在此时间（毫秒）之前暂缓发送存取操作
+    private static long resumeSendingAt = 0;
+
+    // 本 tick 内尚未发送的存取操作
+    private final List<WarehousePayloads.BatchEntry> pendingOps = new ArrayList<>();
+    private final IntSet draggedSlots = new IntOpenHashSet();
+    private boolean dragDepositing = false;
 
     public WarehouseScreen(Component title) {
         super(title);
@@ -46,14 +65,35 @@ public class WarehouseScreen extends Screen {
 
     @Override
     protected void init() {
-        ClientPlayNetworking.send(new WarehousePayloads.RequestWarehouseDataC2SPayload());
-
         int dividerX = this.width / 2;
 
-        this.searchBox = new EditBox(this.font, 20, 40, dividerX - 40, 20, Component.literal("Search"));
-        this.searchBox.setResponder(text -> this.scrollAmount = 0);
+        if (this.listWidget == null) {
+            this.listWidget = new WarehouseListWidget(this.font);
+        }
+        this.listWidget.setBounds(0, LIST_TOP, dividerX - 5, this.height - LIST_BOTTOM_MARGIN);
+
+        String filter = this.searchBox == null ? "" : this.searchBox.getValue();
+        this.searchBox = new EditBox(this.font, 20, 40, dividerX - 100, 20, Component.literal("Search"));
+        this.searchBox.setMaxLength(WarehousePayloads.WarehouseQueryC2SPayload.MAX_FILTER_LENGTH);
+        this.searchBox.setValue(filter);
+        this.searchBox.setResponder(text -> {
+            this.listWidget.resetScroll();
+            requestWindow();
+        });
         this.addRenderableWidget(this.searchBox);
 
+        this.sortButton = Button.builder(getSortLabel(), button -> {
+            WarehouseQueryIndex.SortKey[] keys = WarehouseQueryIndex.SortKey.values();
+            this.sortKey = keys[(this.sortKey.ordinal() + 1) % keys.length];
+            button.setMessage(getSortLabel());
+            this.listWidget.resetScroll();
+            requestWindow();
+        }).bounds(dividerX - 75, 40, 55, 20).build();
+        this.addRenderableWidget(this.sortButton);
+
+        // 首次打开时查询第一屏，服务端之后会在仓库变化时重新推送当前窗口
+        requestWindow();
+
         int buttonWidth = 100;
         int buttonX = dividerX + (dividerX - buttonWidth) / 2;
         this.storeAllButton = Button.builder(Component.literal("Store All"), button -> {
@@ -62,13 +102,36 @@ public class WarehouseScreen extends Screen {
         this.addRenderableWidget(this.storeAllButton);
     }
 
-    private List<Map.Entry<Item, Integer>> getFilteredItems() {
-        String filter = searchBox.getValue().toLowerCase();
-        return ClientWarehouseCache.getItems().entrySet().stream()
-                .filter(entry -> entry.getValue() > 0)
-                .filter(entry -> entry.getKey().getName().getString().toLowerCase().contains(filter))
-                .sorted(Comparator.comparing(entry -> entry.getKey().getName().getString()))
-                .collect(Collectors.toList());
+    private Component getSortLabel() {
+        return Component.literal(switch (this.sortKey) {
+            case NAME -> "Name";
+            case COUNT -> "Count";
+            case ID -> "ID";
+        });
+    }
+
+    /**
+     * 可见范围不在已加载的窗口内，或搜索词 / 排序方式变化时，向服务端查询新的窗口。
+     * 窗口以可见范围为中心前后各多取一屏，小幅滚动不需要重新查询。
+     */
+    private void requestWindow() {
+        if (this.listWidget == null || this.searchBox == null) return;
+
+        String filter = this.searchBox.getValue();
+        int first = this.listWidget.getFirstVisibleIndex();
+        int visible = this.listWidget.getVisibleRowCount();
+        int offset = Math.max(0, first - visible);
+
+        boolean sameQuery = this.lastQuery != null && this.lastQuery.filter().equals(filter)
+                && this.lastQuery.sort() == this.sortKey;
+        if (sameQuery && (ClientWarehouseCache.covers(first, first + visible) || this.lastQuery.offset() == offset)) {
+            return;
+        }
+
+        int limit = Math.min(visible * 3, WarehousePayloads.WarehouseQueryC2SPayload.MAX_LIMIT);
+        ClientPlayNetworking.send(new WarehousePayloads.WarehouseQueryC2SPayload(ClientWarehouseCache.nextRequestId(),
+                filter, this.sortKey, offset, limit));
+        this.lastQuery = new Query(filter, this.sortKey, offset);
     }
 
     // 辅助方法：检查当前是否按下了 Shift 键
@@ -94,45 +157,16 @@ public class WarehouseScreen extends Screen {
     }
 
     private void renderWarehousePart(GuiGraphics graphics, int dividerX, int listBottom) {
-        List<Map.Entry<Item, Integer>> sortedItems = getFilteredItems();
-        int visibleHeight = listBottom - LIST_TOP;
-        int totalContentHeight = sortedItems.size() * ENTRY_HEIGHT;
-        int maxScroll = Math.max(0, totalContentHeight - visibleHeight);
-
-        if (this.scrollAmount > maxScroll) this.scrollAmount = maxScroll;
-
-        graphics.enableScissor(0, LIST_TOP, dividerX - 5, listBottom);
-        int currentY = LIST_TOP - (int) scrollAmount;
-
-        for (int i = 0; i < sortedItems.size(); i++) {
-            Map.Entry<Item, Integer> entry = sortedItems.get(i);
-            Item item = entry.getKey();
-            if (currentY + ENTRY_HEIGHT > LIST_TOP && currentY < listBottom) {
-                // 1. 绘制序号
-                graphics.drawString(this.font, (i + 1) + ".", 15, currentY + 6, TEXT_COLOR_GRAY, false);
-
-                // 2. 绘制物品图标 (位置保持在 35)
-                graphics.renderItem(new ItemStack(item), 35, currentY + 2);
-
-                // 3. 准备数量字符串 (例如 "64 x ")
-                String countText = entry.getValue() + " x ";
-                int countWidth = this.font.width(countText);
-
-                // 4. 先绘制数量 (灰色)
-                // 起始 X 坐标定在 55 (图标后面)
-                graphics.drawString(this.font, countText, 55, currentY + 6, TEXT_COLOR_GRAY, false);
-
-                // 5. 再绘制物品名称 (白色)
-                // X 坐标 = 55 + 数量文字的宽度
-                graphics.drawString(this.font, item.getName(), 55 + countWidth, currentY + 6, TEXT_COLOR_WHITE, false);
-            }
-            currentY += ENTRY_HEIGHT;
-        }
-        graphics.disableScissor();
+        this.listWidget.setTotal(ClientWarehouseCache.getTotal());
+        this.listWidget.render(graphics);
 
         long ts = ClientWarehouseCache.getLastUpdated();
-        String timeStr = (ts <= 0) ? "Never" : DATE_FORMATTER.format(Instant.ofEpochMilli(ts));
-        graphics.drawString(this.font, "Updated: " + timeStr, 20, this.height - 20, TEXT_COLOR_GRAY, false);
+        if (ts != this.updatedLabelTimestamp) {
+            this.updatedLabelTimestamp = ts;
+            String timeStr = (ts <= 0) ? "Never" : DATE_FORMATTER.format(Instant.ofEpochMilli(ts));
+            this.updatedLabel = "Updated: " + timeStr;
+        }
+        graphics.drawString(this.font, this.updatedLabel, 20, this.height - 20, TEXT_COLOR_GRAY, false);
     }
 
     private void renderPlayerInventory(GuiGraphics graphics, int startX, int startY) {
@@ -163,55 +197,75 @@ public class WarehouseScreen extends Screen {
         double mouseX = event.x();
         double mouseY = event.y();
 
-        int dividerX = this.width / 2;
-        int listBottom = this.height - LIST_BOTTOM_MARGIN;
-
         // 1. 仓库列表交互 (取回)
-        if (mouseX < dividerX && mouseY >= LIST_TOP && mouseY <= listBottom) {
-            List<Map.Entry<Item, Integer>> sortedItems = getFilteredItems();
-            int currentY = LIST_TOP - (int) scrollAmount;
-
-            for (Map.Entry<Item, Integer> entry : sortedItems) {
-                if (mouseY >= currentY && mouseY < currentY + ENTRY_HEIGHT) {
-                    Item item = entry.getKey();
-                    // 如果按下 Shift，取出一组；否则取出一个
-                    int count = isShiftDown() ? Math.min(entry.getValue(), item.getDefaultMaxStackSize()) : 1;
-                    ClientPlayNetworking.send(new WarehousePayloads.WithdrawItemC2SPayload(item, count));
-                    return true;
-                }
-                currentY += ENTRY_HEIGHT;
-            }
+        WarehousePayloads.PageEntry entry = this.listWidget.getEntryAt(mouseX, mouseY);
+        if (entry != null) {
+            Item item = entry.item();
+            // 如果按下 Shift，取出一组；否则取出一个
+            int count = isShiftDown() ? (int) Math.min(entry.count(), item.getDefaultMaxStackSize()) : 1;
+            queueOperation(WarehousePayloads.BatchEntry.withdraw(item, count));
+            return true;
         }
 
-        // 2. 玩家背包交互 (存储)
-        if (mouseX >= dividerX + 20 && this.minecraft != null && this.minecraft.player != null) {
-            Inventory inv = this.minecraft.player.getInventory();
-            int startX = dividerX + 20;
-            int startY = 40;
-            int slotSize = 18;
-
-            // 主背包 (索引 9-35)
-            for (int row = 0; row < 3; row++) {
-                for (int col = 0; col < 9; col++) {
-                    int slotId = 9 + row * 9 + col; // 计算正确的槽位索引
-                    if (isMouseInSlot(mouseX, mouseY, startX + col * slotSize, startY + row * slotSize)) {
-                        handleDeposit(slotId, inv.getItem(slotId));
-                        return true;
-                    }
-                }
+        // 2. 玩家背包交互 (存储)，按住拖动可连续存入经过的槽位
+        int slotId = getSlotAt(mouseX, mouseY);
+        if (slotId >= 0) {
+            handleDeposit(slotId, this.minecraft.player.getInventory().getItem(slotId));
+            this.dragDepositing = true;
+            this.draggedSlots.clear();
+            this.draggedSlots.add(slotId);
+            return true;
+        }
+
+        return super.mouseClicked(event, isFirstClick);
+    }
+
+    @Override
+    public boolean mouseDragged(MouseButtonEvent event, double dragX, double dragY) {
+        if (this.dragDepositing) {
+            int slotId = getSlotAt(event.x(), event.y());
+            if (slotId >= 0 && this.draggedSlots.add(slotId)) {
+                handleDeposit(slotId, this.minecraft.player.getInventory().getItem(slotId));
             }
-            // 快捷栏 (索引 0-8)
-            int hotbarY = startY + (3 * slotSize) + 10;
+            return true;
+        }
+        return super.mouseDragged(event, dragX, dragY);
+    }
+
+    @Override
+    public boolean mouseReleased(MouseButtonEvent event) {
+        this.dragDepositing = false;
+        this.draggedSlots.clear();
+        return super.mouseReleased(event);
+    }
+
+    /**
+     * 返回鼠标所在的背包槽位索引，不在任何槽位上时返回 -1
+     */
+    private int getSlotAt(double mouseX, double mouseY) {
+        int dividerX = this.width / 2;
+        if (mouseX < dividerX + 20 || this.minecraft == null || this.minecraft.player == null) return -1;
+
+        int startX = dividerX + 20;
+        int startY = 40;
+        int slotSize = 18;
+
+        // 主背包 (索引 9-35)
+        for (int row = 0; row < 3; row++) {
             for (int col = 0; col < 9; col++) {
-                int slotId = col; // 快捷栏索引
-                if (isMouseInSlot(mouseX, mouseY, startX + col * slotSize, hotbarY)) {
-                    handleDeposit(slotId, inv.getItem(slotId));
-                    return true;
+                if (isMouseInSlot(mouseX, mouseY, startX + col * slotSize, startY + row * slotSize)) {
+                    return 9 + row * 9 + col; // 计算正确的槽位索引
                 }
             }
         }
-
-        return super.mouseClicked(event, isFirstClick);
+        // 快捷栏 (索引 0-8)
+        int hotbarY = startY + (3 * slotSize) + 10;
+        for (int col = 0; col < 9; col++) {
+            if (isMouseInSlot(mouseX, mouseY, startX + col * slotSize, hotbarY)) {
+                return col; // 快捷栏索引
+            }
+        }
+        return -1;
     }
 
     private boolean isMouseInSlot(double mouseX, double mouseY, int slotX, int slotY) {
@@ -221,22 +275,74 @@ public class WarehouseScreen extends Screen {
     private void handleDeposit(int slotId, ItemStack stack) {
         if (stack.isEmpty()) return;
         int count = isShiftDown() ? stack.getCount() : 1;
-        ClientPlayNetworking.send(new WarehousePayloads.DepositItemC2SPayload(slotId, count));
+        queueOperation(WarehousePayloads.BatchEntry.deposit(slotId, count));
+    }
+
+    /**
+     * 服务端的操作队列已满，暂停发送 retryAfterTicks 个 tick
+     */
+    public static void slowDown(int retryAfterTicks) {
+        resumeSendingAt = System.currentTimeMillis() + retryAfterTicks * 50L;
+        Minecraft.getInstance().gui.setOverlayMessage(
+                Component.literal("Too many warehouse operations, slowing down..."), false);
+    }
+
+    private static boolean isThrottled() {
+        return System.currentTimeMillis() < resumeSendingAt;
+    }
+
+    /**
+     * 操作先缓存，每个客户端 tick 合并成一个批量包发送；降速期间缓存满后丢弃新的操作
+     */
+    private void queueOperation(WarehousePayloads.BatchEntry entry) {
+        if (this.pendingOps.size() >= WarehousePayloads.BatchTransferC2SPayload.MAX_ENTRIES) {
+            if (isThrottled()) return;
+            flushOperations();
+        }
+        this.pendingOps.add(entry);
+    }
+
+    private void flushOperations() {
+        if (this.pendingOps.isEmpty() || isThrottled()) return;
+        sendOperations();
+    }
+
+    private void sendOperations() {
+        if (this.pendingOps.isEmpty()) return;
+        ClientPlayNetworking.send(new WarehousePayloads.BatchTransferC2SPayload(List.copyOf(this.pendingOps)));
+        this.pendingOps.clear();
+    }
+
+    @Override
+    public void tick() {
+        super.tick();
+        flushOperations();
+        requestWindow();
     }
 
     @Override
     public boolean mouseScrolled(double mouseX, double mouseY, double horizontalAmount, double verticalAmount) {
         if (mouseX < this.width / 2.0) {
-            int listBottom = this.height - LIST_BOTTOM_MARGIN;
-            int totalContentHeight = getFilteredItems().size() * ENTRY_HEIGHT;
-            int maxScroll = Math.max(0, totalContentHeight - (listBottom - LIST_TOP));
-            this.scrollAmount -= verticalAmount * 20;
-            this.scrollAmount = Math.max(0, Math.min(this.scrollAmount, maxScroll));
+            this.listWidget.setTotal(ClientWarehouseCache.getTotal());
+            this.listWidget.scroll(verticalAmount * 20);
             return true;
         }
         return super.mouseScrolled(mouseX, mouseY, horizontalAmount, verticalAmount);
     }
 
+    @Override
+    public void removed() {
+        // 断开连接时界面也会被移除，此时已无法发包
+        if (this.minecraft != null && this.minecraft.getConnection() != null) {
+            // 关闭前无论是否降速都把剩余操作发出，避免丢失
+            sendOperations();
+            ClientPlayNetworking.send(new WarehousePayloads.CloseWarehouseC2SPayload());
+        }
+        // 界面关闭后不再持有任何仓库数据
+        ClientWarehouseCache.clear();
+        super.removed();
+    }
+
     @Override
     public boolean isPauseScreen() {
         return false;
@@ -0,0 +1,70 @@
+package com.littletomato.warehouse;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.network.Connection;
+import net.minecraft.network.PacketListener;
+import net.minecraft.network.ProtocolInfo;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.network.protocol.PacketFlow;
+import net.minecraft.network.protocol.common.ClientboundCustomPayloadPacket;
+
+/**
+ * 负载测试用的连接：没有真实客户端，发出的数据包在内存通道中被丢弃；
+ * 自定义数据包（仓库同步）按游戏协议编码一次以统计字节数
+ */
+final class LoadTestConnection extends Connection {
+
+    private final RegistryAccess registries;
+    private long customPayloadBytes = 0;
+    private long customPayloadPackets = 0;
+
+    LoadTestConnection(RegistryAccess registries) {
+        super(PacketFlow.SERVERBOUND);
+        this.registries = registries;
+        // 把自身装入内存通道，使连接处于已连接状态
+        new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                if (msg instanceof ClientboundCustomPayloadPacket packet) {
+                    measure(packet);
+                }
+                ReferenceCountUtil.release(msg);
+                promise.setSuccess();
+            }
+        }, this);
+    }
+
+    private void measure(ClientboundCustomPayloadPacket packet) {
+        RegistryFriendlyByteBuf buf = new RegistryFriendlyByteBuf(Unpooled.buffer(), registries);
+        try {
+            ClientboundCustomPayloadPacket.GAMEPLAY_STREAM_CODEC.encode(buf, packet);
+            customPayloadBytes += buf.readableBytes();
+            customPayloadPackets++;
+        } finally {
+            buf.release();
+        }
+    }
+
+    long getCustomPayloadBytes() {
+        return customPayloadBytes;
+    }
+
+    long getCustomPayloadPackets() {
+        return customPayloadPackets;
+    }
+
+    @Override
+    public <T extends PacketListener> void setupInboundProtocol(ProtocolInfo<T> protocolInfo, T packetListener) {
+        // 没有编解码管线，不需要切换协议
+    }
+
+    @Override
+    public void setupOutboundProtocol(ProtocolInfo<?> protocolInfo) {
+    }
+}
@@ -0,0 +1,184 @@
+package com.littletomato.warehouse;
+
+import com.littletomato.LittleTomato;
+import com.mojang.authlib.GameProfile;
+import net.fabricmc.fabric.api.gametest.v1.GameTest;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.minecraft.network.DisconnectionDetails;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.protocol.common.ServerboundCustomPayloadPacket;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ClientInformation;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.server.network.CommonListenerCookie;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * 多人负载测试：在无客户端的 GameTest 服务器上加入 N 个假玩家，按脚本混合发送存入、取出、一键存入、
+ * 翻页和搜索请求，全部经过真实的 C2S 接收器、调度器和同步推送，结束时输出 MSPT、
+ * 每个玩家收到的字节数和操作耗时分位数。
+ * <p>
+ * 运行：./gradlew runGameTest；规模通过系统属性调整：littletomato.loadtest.players（默认 20）、littletomato.loadtest.ticks（默认 600）、
+ * littletomato.loadtest.actionIntervalTicks（每个玩家每隔多少 tick 发一个请求，默认 4）。
+ */
+public class WarehouseLoadTest {
+
+    private static final int MAX_TICKS = 20 * 60 * 30;
+    private static final int PLAYERS = Integer.getInteger("littletomato.loadtest.players", 20);
+    private static final int DURATION_TICKS = Math.min(Integer.getInteger("littletomato.loadtest.ticks", 600),
+            MAX_TICKS - 20);
+    private static final int ACTION_INTERVAL_TICKS = Math.max(1,
+            Integer.getInteger("littletomato.loadtest.actionIntervalTicks", 4));
+
+    private static final Item[] ITEMS = {
+            Items.COBBLESTONE, Items.DIRT, Items.OAK_LOG, Items.SAND, Items.GRAVEL, Items.IRON_INGOT,
+            Items.REDSTONE, Items.COAL, Items.GLASS, Items.STONE_BRICKS, Items.WHEAT_SEEDS, Items.BONE_MEAL
+    };
+
+    private record FakeClient(ServerPlayer player, LoadTestConnection connection, Random random) {
+    }
+
+    @GameTest(maxTicks = MAX_TICKS)
+    public void concurrentUsers(GameTestHelper helper) {
+        MinecraftServer server = helper.getLevel().getServer();
+        WarehouseMetrics.reset();
+
+        List<FakeClient> clients = new ArrayList<>(PLAYERS);
+        for (int i = 0; i < PLAYERS; i++) {
+            clients.add(join(server, helper, i));
+        }
+        // 所有玩家打开仓库界面，仓库变化时每人都会收到其窗口的重新推送
+        for (int i = 0; i < clients.size(); i++) {
+            send(clients.get(i), query(i, "", 0));
+        }
+
+        long[] tickNanos = new long[DURATION_TICKS];
+        int[] elapsed = {0};
+        helper.onEachTick(() -> {
+            int tick = elapsed[0];
+            if (tick >= DURATION_TICKS) return;
+            // 上一个 tick 的耗时
+            if (tick > 0) {
+                tickNanos[tick - 1] = server.getTickTimesNanos()[(server.getTickCount() - 1) % 100];
+            }
+            for (int i = 0; i < clients.size(); i++) {
+                if ((tick + i) % ACTION_INTERVAL_TICKS == 0) {
+                    act(clients.get(i), tick);
+                }
+            }
+            elapsed[0]++;
+        });
+
+        helper.runAfterDelay(DURATION_TICKS + 1, () -> {
+            report(clients, Arrays.copyOf(tickNanos, Math.max(1, DURATION_TICKS - 1)));
+            for (FakeClient client : clients) {
+                client.player().connection.onDisconnect(
+                        new DisconnectionDetails(Component.literal("Load test finished")));
+            }
+            helper.succeed();
+        });
+    }
+
+    private static FakeClient join(MinecraftServer server, GameTestHelper helper, int index) {
+        String name = "loadtest" + index;
+        GameProfile profile = new GameProfile(UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)), name);
+        ServerPlayer player = new ServerPlayer(server, helper.getLevel(), profile, ClientInformation.createDefault());
+        LoadTestConnection connection = new LoadTestConnection(server.registryAccess());
+        server.getPlayerList().placeNewPlayer(connection, player, CommonListenerCookie.createInitial(profile, false));
+
+        Random random = new Random(index);
+        fillInventory(player, random);
+        return new FakeClient(player, connection, random);
+    }
+
+    private static void fillInventory(ServerPlayer player, Random random) {
+        Inventory inventory = player.getInventory();
+        for (int slot = 0; slot < Inventory.INVENTORY_SIZE; slot++) {
+            Item item = ITEMS[random.nextInt(ITEMS.length)];
+            inventory.setItem(slot, new ItemStack(item, item.getDefaultMaxStackSize()));
+        }
+    }
+
+    /**
+     * 脚本：40% 存入一个槽位，30% 取出，10% 一键存入，10% 翻页，10% 搜索
+     */
+    private static void act(FakeClient client, int tick) {
+        Random random = client.random();
+        int roll = random.nextInt(100);
+        if (roll < 40) {
+            int slot = random.nextInt(Inventory.INVENTORY_SIZE);
+            if (client.player().getInventory().getItem(slot).isEmpty()) {
+                fillInventory(client.player(), random);
+            }
+            send(client, new WarehousePayloads.DepositItemC2SPayload(slot, 16));
+        } else if (roll < 70) {
+            send(client, new WarehousePayloads.WithdrawItemC2SPayload(ITEMS[random.nextInt(ITEMS.length)], 16));
+        } else if (roll < 80) {
+            send(client, new WarehousePayloads.DepositAllC2SPayload());
+        } else if (roll < 90) {
+            send(client, query(tick, "", random.nextInt(4) * 64));
+        } else {
+            send(client, query(tick, "o", 0));
+        }
+    }
+
+    private static WarehousePayloads.WarehouseQueryC2SPayload query(int requestId, String filter, int offset) {
+        return new WarehousePayloads.WarehouseQueryC2SPayload(requestId, filter, WarehouseQueryIndex.SortKey.NAME,
+                offset, 64);
+    }
+
+    /**
+     * 按客户端发包的方式交给服务端网络处理器，走与真实玩家相同的接收路径
+     */
+    private static void send(FakeClient client, CustomPacketPayload payload) {
+        client.player().connection.handleCustomPayload(new ServerboundCustomPayloadPacket(payload));
+    }
+
+    private static void report(List<FakeClient> clients, long[] tickNanos) {
+        long[] sorted = tickNanos.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(sorted).average().orElse(0);
+
+        long totalBytes = 0;
+        long maxBytes = 0;
+        long totalPackets = 0;
+        for (FakeClient client : clients) {
+            totalBytes += client.connection().getCustomPayloadBytes();
+            maxBytes = Math.max(maxBytes, client.connection().getCustomPayloadBytes());
+            totalPackets += client.connection().getCustomPayloadPackets();
+        }
+
+        LittleTomato.LOGGER.info("=== Warehouse load test: {} players, {} ticks, one request every {} ticks ===",
+                clients.size(), tickNanos.length, ACTION_INTERVAL_TICKS);
+        LittleTomato.LOGGER.info(String.format(Locale.ROOT, "MSPT: mean %.2f, p50 %.2f, p99 %.2f, max %.2f",
+                mean / 1e6, percentile(sorted, 0.5) / 1e6, percentile(sorted, 0.99) / 1e6,
+                sorted[sorted.length - 1] / 1e6));
+        LittleTomato.LOGGER.info("Sent per player: {} bytes mean, {} bytes max, {} packets mean",
+                totalBytes / Math.max(1, clients.size()), maxBytes, totalPackets / Math.max(1, clients.size()));
+        for (WarehouseMetrics.Counter counter : new WarehouseMetrics.Counter[]{
+                WarehouseMetrics.Counter.PACKETS_RECEIVED, WarehouseMetrics.Counter.OPS_EXECUTED,
+                WarehouseMetrics.Counter.OPS_REJECTED, WarehouseMetrics.Counter.PLAYERS_NOTIFIED}) {
+            LittleTomato.LOGGER.info(WarehouseMetrics.formatCounter(counter));
+        }
+        for (WarehouseMetrics.Timer timer : new WarehouseMetrics.Timer[]{
+                WarehouseMetrics.Timer.OPERATION, WarehouseMetrics.Timer.SYNC_FLUSH, WarehouseMetrics.Timer.TICK}) {
+            LittleTomato.LOGGER.info(WarehouseMetrics.formatTimer(timer));
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * p) - 1)];
+    }
+}
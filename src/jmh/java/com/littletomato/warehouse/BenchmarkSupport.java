@@ -0,0 +1,81 @@
+package com.littletomato.warehouse;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.SimpleContainer;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试的公共准备：不启动服务器，只初始化原版注册表；背包用 SimpleContainer 代替玩家背包
+ */
+final class BenchmarkSupport {
+
+    private static boolean bootstrapped = false;
+
+    private BenchmarkSupport() {
+    }
+
+    static synchronized void bootstrap() {
+        if (bootstrapped) return;
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+        bootstrapped = true;
+    }
+
+    /**
+     * 所有可以存入仓库的物品，按注册顺序
+     */
+    static List<Item> storableItems() {
+        List<Item> items = new ArrayList<>();
+        for (Item item : BuiltInRegistries.ITEM) {
+            ItemStack stack = new ItemStack(item);
+            if (!stack.isEmpty() && InventoryIndex.isEligible(stack)) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * 取前 types 种物品，"all" 表示全部（原版约 1,400 种，不足以构造 10,000 种）
+     */
+    static List<Item> storableItems(String types) {
+        List<Item> items = storableItems();
+        return types.equals("all") ? items : items.subList(0, Math.min(Integer.parseInt(types), items.size()));
+    }
+
+    /**
+     * 装满玩家背包大小的容器：每个槽位一组随机物品
+     */
+    static SimpleContainer fullInventory(List<Item> items, long seed) {
+        Random random = new Random(seed);
+        SimpleContainer container = new SimpleContainer(Inventory.INVENTORY_SIZE);
+        for (int i = 0; i < container.getContainerSize(); i++) {
+            Item item = items.get(random.nextInt(items.size()));
+            container.setItem(i, new ItemStack(item, item.getDefaultMaxStackSize()));
+        }
+        return container;
+    }
+
+    /**
+     * 每种物品随机数量的仓库
+     */
+    static WarehouseState warehouse(List<Item> items, long seed) {
+        Random random = new Random(seed);
+        WarehouseState state = new WarehouseState();
+        SimpleContainer container = new SimpleContainer(1);
+        for (Item item : items) {
+            int count = 1 + random.nextInt(item.getDefaultMaxStackSize());
+            container.setItem(0, new ItemStack(item, count));
+            state.deposit(InventoryIndex.build(container), item, count);
+        }
+        return state;
+    }
+}
@@ -0,0 +1,94 @@
+package com.littletomato.warehouse;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.world.item.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分页同步：服务端查询索引取一页（命中缓存 / 重建索引），以及一页结果经过 WarehousePageS2CPayload.CODEC 的网络编解码
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WarehousePageBenchmark {
+
+    private static final int PAGE_SIZE = 64;
+
+    // 仓库中的物品种类数；原版可存入的物品不足 10,000 种，最大规模用全部物品（"all"）
+    @Param({"100", "1000", "all"})
+    public String types;
+
+    private WarehouseState state;
+    private WarehousePayloads.WarehousePageS2CPayload payload;
+    private RegistryFriendlyByteBuf buffer;
+    private byte[] encodedPayload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.bootstrap();
+        List<Item> items = BenchmarkSupport.storableItems(types);
+        state = BenchmarkSupport.warehouse(items, 42);
+        payload = page(state.getQueryIndex());
+
+        RegistryAccess registries = RegistryAccess.fromRegistryOfRegistries(BuiltInRegistries.REGISTRY);
+        buffer = new RegistryFriendlyByteBuf(Unpooled.buffer(), registries);
+        WarehousePayloads.WarehousePageS2CPayload.CODEC.encode(buffer, payload);
+        encodedPayload = new byte[buffer.readableBytes()];
+        buffer.readBytes(encodedPayload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        buffer.release();
+    }
+
+    private WarehousePayloads.WarehousePageS2CPayload page(WarehouseQueryIndex index) {
+        WarehouseQueryIndex.Window window = index.query("", WarehouseQueryIndex.SortKey.NAME, 0, PAGE_SIZE);
+        List<WarehousePayloads.PageEntry> entries = new ArrayList<>(window.items().size());
+        for (Item item : window.items()) {
+            entries.add(new WarehousePayloads.PageEntry(item, state.getStock(item)));
+        }
+        return new WarehousePayloads.WarehousePageS2CPayload(1, state.getRevision(), state.getLastUpdated(),
+                window.total(), window.offset(), entries);
+    }
+
+    @Benchmark
+    public WarehousePayloads.WarehousePageS2CPayload queryCached() {
+        return page(state.getQueryIndex());
+    }
+
+    @Benchmark
+    public WarehousePayloads.WarehousePageS2CPayload queryColdIndex() {
+        return page(new WarehouseQueryIndex(state));
+    }
+
+    @Benchmark
+    public int payloadEncode() {
+        buffer.clear();
+        WarehousePayloads.WarehousePageS2CPayload.CODEC.encode(buffer, payload);
+        return buffer.readableBytes();
+    }
+
+    @Benchmark
+    public WarehousePayloads.WarehousePageS2CPayload payloadDecode() {
+        buffer.clear();
+        buffer.writeBytes(encodedPayload);
+        return WarehousePayloads.WarehousePageS2CPayload.CODEC.decode(buffer);
+    }
+}
@@ -0,0 +1,58 @@
+package com.littletomato.warehouse;
+
+import com.mojang.serialization.Codec;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.Tag;
+import net.minecraft.world.item.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SavedData 持久化编解码（WarehouseState 的 Codec 经 NBT）的往返耗时
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WarehousePersistenceBenchmark {
+
+    @Param({"100", "1000", "all"})
+    public String types;
+
+    private Codec<WarehouseState> codec;
+    private WarehouseState state;
+    private Tag saved;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.bootstrap();
+        List<Item> items = BenchmarkSupport.storableItems(types);
+        codec = WarehouseState.TYPE.codec();
+        state = BenchmarkSupport.warehouse(items, 42);
+        saved = save();
+    }
+
+    @Benchmark
+    public Tag save() {
+        return codec.encodeStart(NbtOps.INSTANCE, state).getOrThrow();
+    }
+
+    @Benchmark
+    public WarehouseState load() {
+        return codec.parse(NbtOps.INSTANCE, saved).getOrThrow();
+    }
+
+    @Benchmark
+    public WarehouseState roundTrip() {
+        return codec.parse(NbtOps.INSTANCE, save()).getOrThrow();
+    }
+}
@@ -0,0 +1,91 @@
+package com.littletomato.warehouse;
+
+import net.minecraft.world.SimpleContainer;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WarehouseState 存取操作的吞吐量：单种存入、取出，以及对装满的背包执行 store-all
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WarehouseStateBenchmark {
+
+    // 仓库中已有的物品种类数
+    @Param({"100", "1000", "all"})
+    public String types;
+
+    private List<Item> items;
+    private WarehouseState state;
+    private Item item;
+    private SimpleContainer slot;
+    private SimpleContainer inventory;
+    private SimpleContainer fullInventory;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkSupport.bootstrap();
+        items = BenchmarkSupport.storableItems(types);
+        state = BenchmarkSupport.warehouse(items, 42);
+        item = items.get(items.size() / 2);
+        slot = new SimpleContainer(1);
+        inventory = new SimpleContainer(1);
+        fullInventory = BenchmarkSupport.fullInventory(items, 7);
+    }
+
+    @Setup(Level.Invocation)
+    public void refill() {
+        slot.setItem(0, new ItemStack(item, 16));
+        inventory.setItem(0, ItemStack.EMPTY);
+    }
+
+    @Benchmark
+    public WarehouseState.OperationResult deposit() {
+        return state.deposit(InventoryIndex.build(slot), item, 16);
+    }
+
+    @Benchmark
+    public WarehouseState.OperationResult withdraw() {
+        // 每次取出后补回，保持库存不变
+        WarehouseState.OperationResult result = state.withdraw(InventoryIndex.build(inventory), item, 16,
+                leftover -> {
+                });
+        state.deposit(InventoryIndex.build(inventory), item, 16);
+        return result;
+    }
+
+    @Benchmark
+    public Map<Item, Integer> depositAll(FullInventory full) {
+        return state.depositAll(InventoryIndex.build(full.inventory));
+    }
+
+    /**
+     * store-all 每次都需要一个新装满的背包
+     */
+    @State(Scope.Thread)
+    public static class FullInventory {
+        SimpleContainer inventory;
+
+        @Setup(Level.Invocation)
+        public void setUp(WarehouseStateBenchmark benchmark) {
+            inventory = new SimpleContainer(benchmark.fullInventory.getContainerSize());
+            for (int i = 0; i < inventory.getContainerSize(); i++) {
+                inventory.setItem(i, benchmark.fullInventory.getItem(i).copy());
+            }
+        }
+    }
+}
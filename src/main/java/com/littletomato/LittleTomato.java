@@ -1,26 +1,33 @@
 package com.littletomato;
 
+import com.littletomato.warehouse.WarehouseBackups;
+import com.littletomato.warehouse.WarehouseBlocks;
+import com.littletomato.warehouse.WarehouseConfig;
+import com.littletomato.warehouse.WarehouseJournal;
+import com.littletomato.warehouse.WarehouseMetrics;
 import com.littletomato.warehouse.WarehousePayloads;
+import com.littletomato.warehouse.WarehousePorts;
+import com.littletomato.warehouse.WarehouseRegistry;
+import com.littletomato.warehouse.WarehouseScheduler;
 import com.littletomato.warehouse.WarehouseState;
+import com.littletomato.warehouse.WarehouseSync;
+import com.littletomato.warehouse.WarehouseTagIndex;
+import com.littletomato.warehouse.WarehouseTransferStorage;
+import net.fabricmc.fabric.api.event.lifecycle.v1.CommonLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerBlockEntityEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
-import net.minecraft.core.registries.BuiltInRegistries;
-import net.minecraft.world.level.storage.LevelResource;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.minecraft.world.item.Item;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 import net.minecraft.server.MinecraftServer;
-import net.minecraft.server.level.ServerPlayer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.littletomato.warehouse.WarehouseCommand;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
 import java.util.Map;
 
 //import com.littletomato.warehouse.WarehouseKeyMapping;
@@ -32,136 +39,154 @@ public class LittleTomato implements ModInitializer {
     public void onInitialize() {
         LOGGER.info("Tomato Cloud Warehouse Initializing...");
 
+        WarehouseConfig.load();
         WarehouseCommand.registerCommand();
+        WarehouseBlocks.register();
 
-        ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
-            LOGGER.info("Server stopping... Saving warehouse backup to world folder.");
-            try {
-                java.nio.file.Path worldPath = server.getWorldPath(LevelResource.ROOT);
-                saveWarehouseBackup(worldPath, WarehouseState.getCloudWarehouseState(server));
-            } catch (Exception e) {
-                LOGGER.error("Failed to save warehouse backup!", e);
-            }
+        // 定期在后台线程备份所有已加载的仓库；关服时提交最后一次备份，但不等待其完成
+        ServerLifecycleEvents.SERVER_STARTED.register(WarehouseBackups::start);
+        ServerLifecycleEvents.SERVER_STOPPING.register(WarehouseBackups::backupAll);
+
+        // 存储后端在服务器启动时按配置打开；世界保存后先让后端写出变化，再轮换预写日志
+        ServerLifecycleEvents.SERVER_STARTING.register(WarehouseState::openStorage);
+        ServerLifecycleEvents.AFTER_SAVE.register((server, flush, force) -> {
+            WarehouseState.saveStorage();
+            WarehouseJournal.onSaved();
+        });
+
+        // 预写日志：启动时在已保存的仓库数据上重放，每 tick 组提交一次
+        ServerLifecycleEvents.SERVER_STARTED.register(WarehouseJournal::open);
+
+        // 服务端标签（重新）加载后，按标签的库存索引需要重建
+        CommonLifecycleEvents.TAGS_LOADED.register((registries, client) -> {
+            if (!client) WarehouseTagIndex.onTagsReloaded();
+        });
+
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+            WarehouseJournal.close();
+            WarehouseState.closeStorage();
+            WarehouseBackups.stop();
+            WarehouseScheduler.reset();
+            WarehouseSync.reset();
+            WarehouseRegistry.reset();
+            WarehouseTransferStorage.reset();
+            WarehousePorts.reset();
+        });
+        ServerTickEvents.START_SERVER_TICK.register(WarehouseScheduler::onStartTick);
+        ServerTickEvents.END_SERVER_TICK.register(server -> {
+            WarehouseSync.onEndTick(server);
+            WarehouseJournal.flush();
+            WarehouseBackups.onEndTick(server);
+            WarehouseRegistry.onEndTick(server);
+            WarehouseMetrics.onEndTick();
+        });
+        // 仓库端口：随区块加载登记，由每个关卡的调度器在 tick 结束时统一执行
+        ServerBlockEntityEvents.BLOCK_ENTITY_LOAD.register(WarehousePorts::onLoad);
+        ServerBlockEntityEvents.BLOCK_ENTITY_UNLOAD.register(WarehousePorts::onUnload);
+        ServerTickEvents.END_WORLD_TICK.register(WarehousePorts::onEndTick);
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+            WarehouseScheduler.remove(handler.player);
+            WarehouseSync.unsubscribe(handler.player);
+            WarehouseRegistry.onDisconnect(handler.player);
         });
 
-        PayloadTypeRegistry.playS2C().register(WarehousePayloads.WarehouseDataS2CPayload.ID,
-                WarehousePayloads.WarehouseDataS2CPayload.CODEC);
-        PayloadTypeRegistry.playC2S().register(WarehousePayloads.RequestWarehouseDataC2SPayload.ID,
-                WarehousePayloads.RequestWarehouseDataC2SPayload.CODEC);
+        PayloadTypeRegistry.playS2C().register(WarehousePayloads.WarehousePageS2CPayload.ID,
+                WarehousePayloads.WarehousePageS2CPayload.CODEC);
+        PayloadTypeRegistry.playS2C().register(WarehousePayloads.SlowDownS2CPayload.ID,
+                WarehousePayloads.SlowDownS2CPayload.CODEC);
+        PayloadTypeRegistry.playC2S().register(WarehousePayloads.WarehouseQueryC2SPayload.ID,
+                WarehousePayloads.WarehouseQueryC2SPayload.CODEC);
+        PayloadTypeRegistry.playC2S().register(WarehousePayloads.CloseWarehouseC2SPayload.ID,
+                WarehousePayloads.CloseWarehouseC2SPayload.CODEC);
         PayloadTypeRegistry.playC2S().register(WarehousePayloads.DepositItemC2SPayload.ID,
                 WarehousePayloads.DepositItemC2SPayload.CODEC);
         PayloadTypeRegistry.playC2S().register(WarehousePayloads.DepositAllC2SPayload.ID,
                 WarehousePayloads.DepositAllC2SPayload.CODEC);
         PayloadTypeRegistry.playC2S().register(WarehousePayloads.WithdrawItemC2SPayload.ID,
                 WarehousePayloads.WithdrawItemC2SPayload.CODEC);
-
-        // 服务端接收请求的逻辑
-        ServerPlayNetworking.registerGlobalReceiver(WarehousePayloads.RequestWarehouseDataC2SPayload.ID, (payload,
-                                                                                                          context) -> {
-            context.server().execute(() -> {
-                WarehouseState state = WarehouseState.getCloudWarehouseState(context.server());
-                // 发送全量数据给请求的玩家
-                ServerPlayNetworking.send(context.player(),
-                        new WarehousePayloads.WarehouseDataS2CPayload(state.getItems(), state.getLastUpdated()));
+        PayloadTypeRegistry.playC2S().register(WarehousePayloads.BatchTransferC2SPayload.ID,
+                WarehousePayloads.BatchTransferC2SPayload.CODEC);
+
+        // C2S 接收器：所有请求先进入玩家各自的操作队列，由 WarehouseScheduler 在每 tick 的预算内轮流执行。
+        // 接收回调本身已在服务端主线程执行，直接入队即可
+
+        // 分页查询：回复请求的窗口，并在仓库变化时重新推送；只有最新的查询有意义
+        ServerPlayNetworking.registerGlobalReceiver(WarehousePayloads.WarehouseQueryC2SPayload.ID, (payload, context) -> {
+            WarehouseMetrics.onReceived(payload);
+            WarehouseScheduler.submit(context.player(), "query", player -> {
+                WarehouseState state = WarehouseRegistry.getSelected(player);
+                WarehouseSync.query(player, state, payload);
             });
         });
 
+        // 关闭仓库界面：立即取消订阅，并撤销尚未执行的查询，避免关闭后又被重新订阅
+        ServerPlayNetworking.registerGlobalReceiver(WarehousePayloads.CloseWarehouseC2SPayload.ID, (payload, context) -> {
+            WarehouseMetrics.onReceived(payload);
+            WarehouseScheduler.cancel(context.player(), "query");
+            WarehouseSync.unsubscribe(context.player());
+        });
+
         // 存入指定物品
         ServerPlayNetworking.registerGlobalReceiver(WarehousePayloads.DepositItemC2SPayload.ID, (payload, context) -> {
-            context.server().execute(() -> {
-                WarehouseState state = WarehouseState.getCloudWarehouseState(context.server());
-                WarehouseState.OperationResult result = state.depositFromSlot(context.player(), payload.slotId(),
+            WarehouseMetrics.onReceived(payload);
+            WarehouseScheduler.submit(context.player(), player -> {
+                WarehouseState state = WarehouseRegistry.getSelected(player);
+                WarehouseState.OperationResult result = state.depositFromSlot(player, payload.slotId(),
                         payload.count());
 
                 if (result == WarehouseState.OperationResult.SUCCESS) {
-                    LittleTomato.broadcastUpdate(context.server());
+                    broadcastUpdate(context.server(), state);
                 }
             });
         });
 
         // 存入所有
         ServerPlayNetworking.registerGlobalReceiver(WarehousePayloads.DepositAllC2SPayload.ID, (payload, context) -> {
-            context.server().execute(() -> {
-                WarehouseState state = WarehouseState.getCloudWarehouseState(context.server());
-                Map<Item, Integer> deposited = state.depositAll(context.player());
+            WarehouseMetrics.onReceived(payload);
+            WarehouseScheduler.submit(context.player(), player -> {
+                WarehouseState state = WarehouseRegistry.getSelected(player);
+                Map<Item, Integer> deposited = state.depositAll(player);
 
                 if (!deposited.isEmpty()) {
-                    broadcastUpdate(context.server());
+                    broadcastUpdate(context.server(), state);
                 }
             });
         });
 
         // 取出物品
         ServerPlayNetworking.registerGlobalReceiver(WarehousePayloads.WithdrawItemC2SPayload.ID, (payload, context) -> {
-            context.server().execute(() -> {
-                WarehouseState state = WarehouseState.getCloudWarehouseState(context.server());
-                WarehouseState.OperationResult result = state.withdraw(context.player(), payload.item(),
-                        payload.count());
+            WarehouseMetrics.onReceived(payload);
+            WarehouseScheduler.submit(context.player(), player -> {
+                WarehouseState state = WarehouseRegistry.getSelected(player);
+                WarehouseState.OperationResult result = state.withdraw(player, payload.item(), payload.count());
 
                 if (result == WarehouseState.OperationResult.SUCCESS) {
-                    broadcastUpdate(context.server());
+                    broadcastUpdate(context.server(), state);
                 }
             });
         });
-    }
-
-    public static void broadcastUpdate(MinecraftServer server) {
-        WarehouseState state = WarehouseState.getCloudWarehouseState(server);
-        WarehousePayloads.WarehouseDataS2CPayload packet =
-                new WarehousePayloads.WarehouseDataS2CPayload(state.getItems(), state.getLastUpdated());
-        for (ServerPlayer player : server.getPlayerList().getPlayers()) {
-            ServerPlayNetworking.send(player, packet);
-        }
-    }
-
-    private void saveWarehouseBackup(java.nio.file.Path worldPath, WarehouseState state) {
-        Map<Item, Integer> items = state.getItems();
-        if (items.isEmpty()) return;
-
-        // 1. 设置路径为：世界文件夹/warehouse_backups/
-        java.nio.file.Path backupDir = worldPath.resolve("warehouse_backups");
-
-        try {
-            Files.createDirectories(backupDir);
 
-            // 2. 准备文件名
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
-            java.nio.file.Path backupFile = backupDir.resolve("backup_" + timestamp + ".txt");
+        // 批量存取：整批成功或整批失败，只回报一次结果、只推送一次更新
+        ServerPlayNetworking.registerGlobalReceiver(WarehousePayloads.BatchTransferC2SPayload.ID, (payload, context) -> {
+            WarehouseMetrics.onReceived(payload);
+            WarehouseScheduler.submit(context.player(), player -> {
+                WarehouseState state = WarehouseRegistry.getSelected(player);
+                WarehouseState.OperationResult result = state.applyBatch(player, payload.entries());
 
-            // 3. 构建内容
-            StringBuilder sb = new StringBuilder();
-            sb.append("--- Cloud Warehouse Backup ---\n");
-            sb.append("World: ").append(worldPath.getFileName().toString()).append("\n"); // 显示世界名
-            sb.append("Time: ").append(timestamp).append("\n");
-            sb.append("Total Types: ").append(items.size()).append("\n\n");
-
-            items.forEach((item, count) -> {
-                if (count > 0) {
-                    String id = BuiltInRegistries.ITEM.getKey(item).toString(); // 建议用这种方式获取ID
-                    String name = item.getName().getString();
-                    sb.append(String.format("[%s] %s x%d\n", id, name, count));
+                if (result == WarehouseState.OperationResult.SUCCESS) {
+                    broadcastUpdate(context.server(), state);
+                } else {
+                    player.sendSystemMessage(result.getMessage(), true);
                 }
             });
+        });
+    }
 
-            // 4. 写入文件
-            Files.writeString(backupFile, sb.toString());
-            LOGGER.info("Warehouse backup saved to world folder: {}", backupFile.toAbsolutePath());
-
-            // 5. 自动清理旧备份
-            int MAX_BACKUP_COUNT = 3;
-            try (var files = Files.list(backupDir)) {
-                List<java.nio.file.Path> allBackups = files.sorted().toList();
-                if (allBackups.size() > MAX_BACKUP_COUNT) {
-                    for (int i = 0; i < allBackups.size() - MAX_BACKUP_COUNT; i++) {
-                        Files.deleteIfExists(allBackups.get(i));
-                    }
-                }
-            } catch (IOException e) {
-                LOGGER.warn("Failed to clean up old backups in world folder");
-            }
-
-        } catch (IOException e) {
-            LOGGER.error("IO Error while saving warehouse backup to world folder", e);
-        }
+    /**
+     * 通知客户端仓库已变化，实际推送合并到本 tick 结束时进行
+     */
+    public static void broadcastUpdate(MinecraftServer server, WarehouseState state) {
+        WarehouseMetrics.count(WarehouseMetrics.Counter.BROADCASTS);
+        WarehouseSync.markDirty(state.getId());
     }
-}
\ No newline at end of file
+}
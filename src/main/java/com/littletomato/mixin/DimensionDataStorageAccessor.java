@@ -0,0 +1,17 @@
+package com.littletomato.mixin;
+
+import net.minecraft.world.level.saveddata.SavedData;
+import net.minecraft.world.level.saveddata.SavedDataType;
+import net.minecraft.world.level.storage.DimensionDataStorage;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import java.util.Map;
+import java.util.Optional;
+
+// 用于从数据存储中移除已卸载的仓库，以及导入数据库后的旧仓库数据
+@Mixin(DimensionDataStorage.class)
+public interface DimensionDataStorageAccessor {
+    @Accessor("cache")
+    Map<SavedDataType<?>, Optional<SavedData>> littleTomato$getCache();
+}
@@ -0,0 +1,160 @@
+package com.littletomato.warehouse;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.world.Container;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+
+import java.util.Set;
+
+/**
+ * 单次操作用的背包索引：一次遍历建立 物品 -> 合法槽位列表 / 合法总数 的映射，
+ * 之后的统计、扣除、放入都只访问相关槽位。索引只在一次操作内有效，期间背包不应被其他代码修改。
+ */
+public class InventoryIndex {
+
+    private final Container container;
+    // 只有索引小于该值的空槽位可以放入物品：玩家背包不占用盔甲栏和副手
+    private final int insertLimit;
+    // 合法（可堆叠且无附加组件）物品所在的槽位
+    private final Reference2ObjectOpenHashMap<Item, IntArrayList> slotsByItem = new Reference2ObjectOpenHashMap<>();
+    private final Reference2IntOpenHashMap<Item> totals = new Reference2IntOpenHashMap<>();
+    private final IntArrayList emptySlots = new IntArrayList();
+
+    private InventoryIndex(Container container) {
+        this.container = container;
+        this.insertLimit = container instanceof Inventory ? Inventory.INVENTORY_SIZE : container.getContainerSize();
+    }
+
+    public static InventoryIndex build(Container container) {
+        InventoryIndex index = new InventoryIndex(container);
+        for (int i = 0; i < container.getContainerSize(); i++) {
+            ItemStack stack = container.getItem(i);
+            if (stack.isEmpty()) {
+                if (i < index.insertLimit) index.emptySlots.add(i);
+            } else if (isEligible(stack)) {
+                index.slotsByItem.computeIfAbsent(stack.getItem(), k -> new IntArrayList()).add(i);
+                index.totals.addTo(stack.getItem(), stack.getCount());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 可以存入仓库的物品：可堆叠且没有附加组件
+     */
+    public static boolean isEligible(ItemStack stack) {
+        return stack.getMaxStackSize() > 1 && stack.getComponentsPatch().isEmpty();
+    }
+
+    public Container getContainer() {
+        return container;
+    }
+
+    public int getTotal(Item item) {
+        return totals.getInt(item);
+    }
+
+    public IntList getSlots(Item item) {
+        IntArrayList slots = slotsByItem.get(item);
+        return slots == null ? IntList.of() : slots;
+    }
+
+    /**
+     * 背包中所有合法物品种类
+     */
+    public Set<Item> getItems() {
+        return totals.keySet();
+    }
+
+    /**
+     * 已有同类堆叠中还能放入的数量（不含空槽位）
+     */
+    public int getStackRoom(Item item) {
+        IntArrayList slots = slotsByItem.get(item);
+        if (slots == null) return 0;
+        int maxStack = Math.min(item.getDefaultMaxStackSize(), container.getMaxStackSize());
+        int room = 0;
+        for (int i = 0; i < slots.size(); i++) {
+            room += Math.max(0, maxStack - container.getItem(slots.getInt(i)).getCount());
+        }
+        return room;
+    }
+
+    public int getEmptySlotCount() {
+        return emptySlots.size();
+    }
+
+    /**
+     * 从合法槽位中扣除物品
+     *
+     * @return 实际扣除的数量
+     */
+    public int remove(Item item, int count) {
+        IntArrayList slots = slotsByItem.get(item);
+        if (slots == null || count <= 0) return 0;
+
+        int removed = 0;
+        for (int i = 0; i < slots.size() && removed < count; i++) {
+            int slot = slots.getInt(i);
+            ItemStack stack = container.getItem(slot);
+            int toTake = Math.min(stack.getCount(), count - removed);
+            stack.shrink(toTake);
+            removed += toTake;
+            if (stack.isEmpty() && slot < insertLimit) {
+                emptySlots.add(slot);
+            }
+        }
+
+        slots.removeIf(slot -> container.getItem(slot).isEmpty());
+        if (slots.isEmpty()) {
+            slotsByItem.remove(item);
+            totals.removeInt(item);
+        } else {
+            totals.addTo(item, -removed);
+        }
+        container.setChanged();
+        return removed;
+    }
+
+    /**
+     * 放入物品：先补满已有的同类堆叠，再占用空槽位
+     *
+     * @return 放不下的剩余数量
+     */
+    public long insert(Item item, long count) {
+        int maxStack = item.getDefaultMaxStackSize();
+        long remaining = count;
+
+        IntArrayList slots = slotsByItem.get(item);
+        if (slots != null) {
+            for (int i = 0; i < slots.size() && remaining > 0; i++) {
+                ItemStack stack = container.getItem(slots.getInt(i));
+                int room = Math.min(maxStack, container.getMaxStackSize()) - stack.getCount();
+                if (room <= 0) continue;
+                int toAdd = (int) Math.min(room, remaining);
+                stack.grow(toAdd);
+                remaining -= toAdd;
+            }
+        }
+
+        while (remaining > 0 && !emptySlots.isEmpty()) {
+            int slot = emptySlots.removeInt(0);
+            int toAdd = (int) Math.min(Math.min(maxStack, container.getMaxStackSize()), remaining);
+            container.setItem(slot, new ItemStack(item, toAdd));
+            slotsByItem.computeIfAbsent(item, k -> new IntArrayList()).add(slot);
+            remaining -= toAdd;
+        }
+
+        long inserted = count - remaining;
+        if (inserted > 0) {
+            totals.addTo(item, (int) inserted);
+            container.setChanged();
+        }
+        return remaining;
+    }
+}
@@ -0,0 +1,164 @@
+package com.littletomato.warehouse;
+
+import com.littletomato.LittleTomato;
+import com.littletomato.mixin.DimensionDataStorageAccessor;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.Identifier;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.level.saveddata.SavedDataType;
+import net.minecraft.world.level.storage.LevelResource;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 嵌入式数据库后端：所有仓库保存在 data/cloud_warehouse.mv.db 中，每个仓库一张 物品 ID -> 数量 的表，
+ * 另有一张元数据表记录各仓库的 revision 和更新时间。
+ * <p>
+ * 仓库在首次访问时才读入内存；保存时只写出自上次保存以来变化的条目并提交一次，耗时与变化量相关，
+ * 与仓库大小无关。关闭了自动提交，文件中的内容总是某次保存时的一致状态，之后的变化由预写日志补齐。
+ */
+public class MVStoreWarehouseStorage implements WarehouseStorage {
+
+    private static final String FILE_NAME = "cloud_warehouse.mv.db";
+    private static final String STOCK_MAP_PREFIX = "stock/";
+    private static final String META_MAP = "meta";
+
+    private final MinecraftServer server;
+    private final MVStore store;
+    private final MVMap<String, Long> meta;
+    private final Map<String, WarehouseState> loaded = new HashMap<>();
+
+    public MVStoreWarehouseStorage(MinecraftServer server) throws IOException {
+        this.server = server;
+        Path dir = server.getWorldPath(LevelResource.ROOT).resolve("data");
+        Files.createDirectories(dir);
+        this.store = new MVStore.Builder()
+                .fileName(dir.resolve(FILE_NAME).toString())
+                .autoCommitDisabled()
+                .open();
+        this.meta = store.openMap(META_MAP);
+    }
+
+    @Override
+    public WarehouseState get(String warehouseId) {
+        WarehouseState state = loaded.get(warehouseId);
+        if (state == null) {
+            state = load(warehouseId);
+            state.setId(warehouseId);
+            loaded.put(warehouseId, state);
+        }
+        return state;
+    }
+
+    private WarehouseState load(String warehouseId) {
+        if (!meta.containsKey(warehouseId + "/revision")) {
+            return importSavedData(warehouseId);
+        }
+
+        MVMap<String, Long> rows = store.openMap(STOCK_MAP_PREFIX + warehouseId);
+        Map<Item, Long> items = new HashMap<>(Math.max(16, rows.size() * 4 / 3 + 1));
+        int unknown = 0;
+        for (Map.Entry<String, Long> row : rows.entrySet()) {
+            Identifier key = Identifier.tryParse(row.getKey());
+            Optional<Item> item = key == null ? Optional.empty() : BuiltInRegistries.ITEM.getOptional(key);
+            if (item.isPresent()) {
+                items.put(item.get(), row.getValue());
+            } else {
+                unknown++;
+            }
+        }
+        if (unknown > 0) {
+            LittleTomato.LOGGER.warn("Warehouse {} has {} entries for unknown items, keeping them in storage",
+                    warehouseId, unknown);
+        }
+
+        return new WarehouseState(items, meta.getOrDefault(warehouseId + "/lastUpdated", 0L),
+                meta.get(warehouseId + "/revision"));
+    }
+
+    /**
+     * 数据库中还没有该仓库时，从 SavedData 后端导入（切换后端后的首次启动），并立即写入数据库。
+     * 读取时原版会把旧数据放入数据存储的缓存，复制后立即移除，避免整个仓库在内存中常驻两份
+     */
+    private WarehouseState importSavedData(String warehouseId) {
+        ServerLevel level = server.getLevel(ServerLevel.OVERWORLD);
+        SavedDataType<WarehouseState> type = WarehouseState.savedDataType(warehouseId);
+        WarehouseState legacy = level == null ? null : level.getDataStorage().get(type);
+        WarehouseState state = legacy == null ? new WarehouseState()
+                : new WarehouseState(Map.copyOf(legacy.getItems()), legacy.getLastUpdated(), legacy.getRevision());
+        if (level != null) {
+            ((DimensionDataStorageAccessor) level.getDataStorage()).littleTomato$getCache().remove(type);
+        }
+        if (legacy != null) {
+            LittleTomato.LOGGER.info("Imported warehouse {} ({} types) into {}", warehouseId, state.getItems().size(),
+                    FILE_NAME);
+        }
+
+        MVMap<String, Long> rows = store.openMap(STOCK_MAP_PREFIX + warehouseId);
+        state.getItems().forEach((item, count) -> rows.put(BuiltInRegistries.ITEM.getKey(item).toString(), count));
+        writeMeta(warehouseId, state);
+        store.commit();
+        return state;
+    }
+
+    /**
+     * 写出该仓库的变化后移出内存；变化在下一次保存时随其他仓库一起提交
+     */
+    @Override
+    public boolean unload(String warehouseId) {
+        WarehouseState state = loaded.remove(warehouseId);
+        if (state != null) {
+            writeChanges(warehouseId, state);
+        }
+        return true;
+    }
+
+    @Override
+    public void save() {
+        for (Map.Entry<String, WarehouseState> entry : loaded.entrySet()) {
+            writeChanges(entry.getKey(), entry.getValue());
+        }
+        if (store.hasUnsavedChanges()) {
+            store.commit();
+        }
+    }
+
+    private void writeChanges(String warehouseId, WarehouseState state) {
+        Set<Item> dirty = state.drainDirtyItems();
+        if (dirty.isEmpty()) return;
+
+        MVMap<String, Long> rows = store.openMap(STOCK_MAP_PREFIX + warehouseId);
+        for (Item item : dirty) {
+            String id = BuiltInRegistries.ITEM.getKey(item).toString();
+            long count = state.getStock(item);
+            if (count > 0) {
+                rows.put(id, count);
+            } else {
+                rows.remove(id);
+            }
+        }
+        writeMeta(warehouseId, state);
+    }
+
+    @Override
+    public void close() {
+        save();
+        store.close();
+        loaded.clear();
+    }
+
+    private void writeMeta(String warehouseId, WarehouseState state) {
+        meta.put(warehouseId + "/revision", state.getRevision());
+        meta.put(warehouseId + "/lastUpdated", state.getLastUpdated());
+    }
+}
@@ -0,0 +1,67 @@
+package com.littletomato.warehouse;
+
+import com.littletomato.mixin.DimensionDataStorageAccessor;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.saveddata.SavedDataType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 默认后端：每个仓库是主世界数据存储中的一个 SavedData，由原版随世界一起保存（只保存有变化的仓库）
+ */
+public class SavedDataWarehouseStorage implements WarehouseStorage {
+
+    private final MinecraftServer server;
+    private final Map<String, SavedDataType<WarehouseState>> types = new HashMap<>();
+
+    public SavedDataWarehouseStorage(MinecraftServer server) {
+        this.server = server;
+    }
+
+    @Override
+    public WarehouseState get(String warehouseId) {
+        ServerLevel level = server.getLevel(ServerLevel.OVERWORLD);
+        if (level == null) return new WarehouseState();
+        WarehouseState state = level.getDataStorage()
+                .computeIfAbsent(types.computeIfAbsent(warehouseId, WarehouseState::savedDataType));
+        state.setId(warehouseId);
+        return state;
+    }
+
+    /**
+     * 只卸载已随世界保存过的仓库，有未保存变化的仓库要等到下一次保存之后
+     */
+    @Override
+    public boolean unload(String warehouseId) {
+        SavedDataType<WarehouseState> type = types.get(warehouseId);
+        ServerLevel level = server.getLevel(ServerLevel.OVERWORLD);
+        if (type == null || level == null) return true;
+
+        WarehouseState state = level.getDataStorage().get(type);
+        if (state != null && state.isDirty()) return false;
+
+        ((DimensionDataStorageAccessor) level.getDataStorage()).littleTomato$getCache().remove(type);
+        types.remove(warehouseId);
+        return true;
+    }
+
+    @Override
+    public void save() {
+        // 原版已写出整个仓库，只需清空变化记录
+        ServerLevel level = server.getLevel(ServerLevel.OVERWORLD);
+        if (level == null) return;
+        for (SavedDataType<WarehouseState> type : types.values()) {
+            WarehouseState state = level.getDataStorage().get(type);
+            if (state != null) {
+                state.drainDirtyItems();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        save();
+    }
+}
@@ -0,0 +1,493 @@
+package com.littletomato.warehouse;
+
+import com.littletomato.LittleTomato;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.Identifier;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.level.storage.LevelResource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjLongConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 仓库定期备份：主线程只复制一份不可变的库存快照，编码、压缩、写盘和清理都在后台线程完成。
+ * <p>
+ * 每个仓库各有一条独立的备份链：全局仓库的备份在备份根目录（兼容旧版本），其余仓库各占一个子目录，
+ * 目录名为仓库的命令参数写法（如 team.red）。每个已加载的仓库按间隔备份，卸载前再备份一次。
+ * <p>
+ * 每隔 backup.fullEvery 次备份做一次全量备份，其余为增量备份，只包含相对上一次全量备份变化的条目
+ * （数量 0 表示已取空）。保留策略按小时 / 按天各保留每个时间段内最新的全量备份，
+ * 增量备份随其基准全量备份一起删除。
+ * <p>
+ * 文件为 gzip 压缩的二进制：魔数(int) + 版本(byte) + 类型(byte) + revision(long) + 基准 revision(long)
+ * + 时间戳(long) + 条目数(int)，每个条目为 物品 ID(utf) + 数量(long)，最后是以上内容的 CRC32(long)。
+ */
+public class WarehouseBackups {
+
+    public static final int MAGIC = 0x4C545742; // "LTWB"
+    public static final byte VERSION = 1;
+    public static final byte TYPE_FULL = 0;
+    public static final byte TYPE_INCREMENTAL = 1;
+
+    public static final String DIR_NAME = "warehouse_backups";
+    public static final String EXTENSION = ".whb";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final DateTimeFormatter NAME_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    // full-20250101-120000-r42.whb / incr-20250101-123000-r57-b42.whb
+    public static final Pattern FILE_PATTERN = Pattern.compile("(full|incr)-(\\d{8}-\\d{6})-r(\\d+)(?:-b(\\d+))?\\.whb");
+    // 旧版本写出的文本备份 backup_2025-01-01_12-00-00.txt，不再生成，启动时按旧版本的上限清理
+    private static final Pattern LEGACY_FILE_PATTERN =
+            Pattern.compile("backup_\\d{4}-\\d{2}-\\d{2}_\\d{2}-\\d{2}-\\d{2}\\.txt");
+    private static final int LEGACY_KEEP = 3;
+
+    // 关闭服务器时最多等待正在进行的备份的时间，超时后放弃，未完成的备份只会留下临时文件
+    private static final long SHUTDOWN_WAIT_SECONDS = 2;
+
+    // 备份文件名中包含的信息，列出备份时无需打开文件
+    public record BackupInfo(Path path, boolean full, LocalDateTime time, long revision, long baseRevision) {
+        public String name() {
+            return path.getFileName().toString();
+        }
+    }
+
+    // 一个备份还原出的完整库存；unknownItems 为当前注册表中已不存在、被跳过的物品数
+    public record RestoredBackup(BackupInfo info, Map<Item, Long> items, int unknownItems) {
+    }
+
+    // 主线程复制的库存快照，交给后台线程后不再修改
+    private record Snapshot(String warehouseId, long revision, long timestamp, Item[] items, long[] counts) {
+    }
+
+    // 一个仓库的备份链状态，仅由后台线程访问
+    private static class Chain {
+        private Map<String, Long> lastFull = null;
+        private long lastFullRevision = -1;
+        private int backupsSinceFull = 0;
+    }
+
+    private static ExecutorService executor = null;
+    private static Path backupRoot = null;
+    private static int ticksSinceBackup = 0;
+    // 仓库 ID -> 上次提交备份时的 revision
+    private static final Map<String, Long> lastBackupRevisions = new HashMap<>();
+
+    // 仓库 ID -> 备份链，仅由后台线程访问
+    private static final Map<String, Chain> chains = new HashMap<>();
+
+    public static void start(MinecraftServer server) {
+        stop();
+        backupRoot = getBackupRoot(server);
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Warehouse-Backup");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        ticksSinceBackup = 0;
+        lastBackupRevisions.clear();
+
+        Path root = backupRoot;
+        executor.execute(() -> {
+            chains.clear();
+            if (!Files.isDirectory(root)) return;
+            deleteTempFiles(root);
+            pruneLegacyBackups(root);
+            try (var dirs = Files.list(root)) {
+                dirs.filter(Files::isDirectory).forEach(WarehouseBackups::deleteTempFiles);
+            } catch (IOException e) {
+                LittleTomato.LOGGER.warn("Failed to clean up warehouse backup temp files", e);
+            }
+        });
+    }
+
+    /**
+     * 每个服务端 tick 结束时调用，到达间隔时为每个有变化的已加载仓库提交一次备份
+     */
+    public static void onEndTick(MinecraftServer server) {
+        if (executor == null) return;
+        if (++ticksSinceBackup < WarehouseConfig.backupIntervalMinutes * 60 * 20) return;
+        ticksSinceBackup = 0;
+        backupAll(server);
+    }
+
+    /**
+     * 为所有已加载的仓库提交备份；不经过 WarehouseRegistry.get，不会刷新仓库的访问时间
+     */
+    public static void backupAll(MinecraftServer server) {
+        WarehouseStorage storage = WarehouseState.getStorage(server);
+        for (String warehouseId : WarehouseRegistry.getLoadedIds()) {
+            backup(storage.get(warehouseId));
+        }
+    }
+
+    /**
+     * 立即为一个仓库提交一次备份（仓库自上次备份后没有变化时跳过）
+     */
+    public static void backup(WarehouseState state) {
+        if (executor == null) return;
+        Long lastRevision = lastBackupRevisions.put(state.getId(), state.getRevision());
+        if (lastRevision != null && lastRevision == state.getRevision()) return;
+
+        WarehouseStock stock = state.stock();
+        Item[] items = new Item[stock.size()];
+        long[] counts = new long[stock.size()];
+        int[] index = {0};
+        stock.forEach((item, count) -> {
+            items[index[0]] = item;
+            counts[index[0]] = count;
+            index[0]++;
+        });
+
+        Snapshot snapshot = new Snapshot(state.getId(), state.getRevision(), System.currentTimeMillis(), items, counts);
+        Path dir = getBackupDir(backupRoot, state.getId());
+        executor.execute(() -> write(dir, chains.computeIfAbsent(snapshot.warehouseId(), id -> new Chain()), snapshot));
+    }
+
+    public static Path getBackupRoot(MinecraftServer server) {
+        return server.getWorldPath(LevelResource.ROOT).resolve(DIR_NAME);
+    }
+
+    /**
+     * 仓库的备份目录：全局仓库为根目录，其余为以命令参数写法命名的子目录
+     */
+    public static Path getBackupDir(MinecraftServer server, String warehouseId) {
+        return getBackupDir(getBackupRoot(server), warehouseId);
+    }
+
+    private static Path getBackupDir(Path root, String warehouseId) {
+        if (warehouseId.equals(WarehouseRegistry.GLOBAL)) return root;
+        // 队伍名可能含有文件名中不允许的字符
+        return root.resolve(URLEncoder.encode(WarehouseRegistry.toArgument(warehouseId), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 有备份目录的仓库（命令参数写法），用于命令补全
+     */
+    public static Set<String> listBackedUpWarehouses(MinecraftServer server) throws IOException {
+        Set<String> result = new TreeSet<>();
+        Path root = getBackupRoot(server);
+        if (!Files.isDirectory(root)) return result;
+
+        result.add(WarehouseRegistry.toArgument(WarehouseRegistry.GLOBAL));
+        try (var dirs = Files.list(root)) {
+            for (Path dir : (Iterable<Path>) dirs::iterator) {
+                if (!Files.isDirectory(dir)) continue;
+                String argument = URLDecoder.decode(dir.getFileName().toString(), StandardCharsets.UTF_8);
+                if (WarehouseRegistry.fromArgument(argument) != null) {
+                    result.add(argument);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 列出目录中的所有备份，最新的在前
+     */
+    public static List<BackupInfo> listBackups(Path dir) throws IOException {
+        List<BackupInfo> backups = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return backups;
+
+        try (var files = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                Matcher m = FILE_PATTERN.matcher(path.getFileName().toString());
+                if (!m.matches()) continue;
+                try {
+                    boolean full = m.group(1).equals("full");
+                    long revision = Long.parseLong(m.group(3));
+                    backups.add(new BackupInfo(path, full, LocalDateTime.parse(m.group(2), NAME_TIME_FORMAT), revision,
+                            full ? revision : Long.parseLong(m.group(4))));
+                } catch (DateTimeParseException | NumberFormatException e) {
+                    // 不是本模组生成的文件，忽略
+                }
+            }
+        }
+        backups.sort(Comparator.comparing(BackupInfo::time).thenComparing(BackupInfo::revision).reversed());
+        return backups;
+    }
+
+    /**
+     * 读取一个备份并还原出完整库存：增量备份会先读取其基准全量备份，再叠加差异
+     */
+    public static RestoredBackup restore(Path dir, String name) throws IOException {
+        List<BackupInfo> backups = listBackups(dir);
+        BackupInfo info = backups.stream().filter(b -> b.name().equals(name)).findFirst()
+                .orElseThrow(() -> new IOException("No such backup: " + name));
+
+        Map<Item, Long> items = new HashMap<>();
+        int[] unknown = {0};
+        if (!info.full()) {
+            BackupInfo base = backups.stream().filter(b -> b.full() && b.revision() == info.baseRevision())
+                    .findFirst()
+                    .orElseThrow(() -> new IOException("Base backup r" + info.baseRevision() + " of " + name
+                            + " is missing"));
+            read(base.path(), TYPE_FULL, items::put, unknown);
+        }
+        read(info.path(), info.full() ? TYPE_FULL : TYPE_INCREMENTAL, (item, count) -> {
+            if (count > 0) {
+                items.put(item, count);
+            } else {
+                items.remove(item);
+            }
+        }, unknown);
+        return new RestoredBackup(info, items, unknown[0]);
+    }
+
+    /**
+     * 逐条流式读取备份文件并校验 CRC32；校验失败时抛出异常，此时 consumer 可能已收到部分条目
+     */
+    private static void read(Path path, byte expectedType, ObjLongConsumer<Item> consumer, int[] unknown)
+            throws IOException {
+        try (InputStream file = Files.newInputStream(path);
+             GZIPInputStream gzip = new GZIPInputStream(new BufferedInputStream(file));
+             CheckedInputStream checked = new CheckedInputStream(gzip, new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Not a warehouse backup: " + path.getFileName());
+            }
+            if (in.readByte() != expectedType) {
+                throw new IOException("Unexpected backup type: " + path.getFileName());
+            }
+            in.readLong(); // revision
+            in.readLong(); // baseRevision
+            in.readLong(); // timestamp
+
+            int size = in.readInt();
+            if (size < 0) {
+                throw new IOException("Corrupted backup: " + path.getFileName());
+            }
+            for (int i = 0; i < size; i++) {
+                String id = in.readUTF();
+                long count = in.readLong();
+                Identifier key = Identifier.tryParse(id);
+                Optional<Item> item = key == null ? Optional.empty() : BuiltInRegistries.ITEM.getOptional(key);
+                if (item.isPresent()) {
+                    consumer.accept(item.get(), count);
+                } else {
+                    unknown[0]++;
+                }
+            }
+
+            long actual = checked.getChecksum().getValue();
+            if (new DataInputStream(gzip).readLong() != actual) {
+                throw new IOException("Checksum mismatch in backup " + path.getFileName());
+            }
+        }
+    }
+
+    /**
+     * 服务器停止时调用：提交最后一次备份，但只短暂等待，不阻塞关服
+     */
+    public static void stop() {
+        if (executor == null) return;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                LittleTomato.LOGGER.warn("Warehouse backup still running, not waiting for it");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+        backupRoot = null;
+    }
+
+    // --- 以下方法在后台线程执行 ---
+
+    private static void write(Path dir, Chain chain, Snapshot snapshot) {
+        long start = System.nanoTime();
+        Map<String, Long> current = new TreeMap<>();
+        for (int i = 0; i < snapshot.items().length; i++) {
+            current.put(BuiltInRegistries.ITEM.getKey(snapshot.items()[i]).toString(), snapshot.counts()[i]);
+        }
+
+        boolean full = chain.lastFull == null || chain.backupsSinceFull + 1 >= WarehouseConfig.backupFullEvery;
+        Map<String, Long> entries;
+        if (full) {
+            entries = current;
+        } else {
+            // 相对上一次全量备份的差异，数量 0 表示已取空
+            entries = new TreeMap<>();
+            for (Map.Entry<String, Long> e : current.entrySet()) {
+                if (!e.getValue().equals(chain.lastFull.get(e.getKey()))) {
+                    entries.put(e.getKey(), e.getValue());
+                }
+            }
+            for (String id : chain.lastFull.keySet()) {
+                if (!current.containsKey(id)) {
+                    entries.put(id, 0L);
+                }
+            }
+        }
+
+        String time = NAME_TIME_FORMAT.format(Instant.ofEpochMilli(snapshot.timestamp()).atZone(ZoneId.systemDefault()));
+        String name = full
+                ? "full-" + time + "-r" + snapshot.revision() + EXTENSION
+                : "incr-" + time + "-r" + snapshot.revision() + "-b" + chain.lastFullRevision + EXTENSION;
+
+        try {
+            Files.createDirectories(dir);
+            Path target = dir.resolve(name);
+            Path temp = dir.resolve(name + TEMP_SUFFIX);
+            writeFile(temp, full ? TYPE_FULL : TYPE_INCREMENTAL, snapshot.revision(),
+                    full ? snapshot.revision() : chain.lastFullRevision, snapshot.timestamp(), entries);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            WarehouseMetrics.count(WarehouseMetrics.Counter.BACKUP_BYTES, Files.size(target));
+            WarehouseMetrics.record(WarehouseMetrics.Timer.BACKUP_WRITE, start);
+            LittleTomato.LOGGER.info("Warehouse backup saved: {}/{} ({} entries)", snapshot.warehouseId(), name,
+                    entries.size());
+        } catch (IOException e) {
+            LittleTomato.LOGGER.error("Failed to write warehouse backup {}/{}", snapshot.warehouseId(), name, e);
+            return;
+        }
+
+        if (full) {
+            chain.lastFull = current;
+            chain.lastFullRevision = snapshot.revision();
+            chain.backupsSinceFull = 0;
+        } else {
+            chain.backupsSinceFull++;
+        }
+        applyRetention(dir);
+    }
+
+    private static void writeFile(Path path, byte type, long revision, long baseRevision, long timestamp,
+                                  Map<String, Long> entries) throws IOException {
+        try (OutputStream file = Files.newOutputStream(path);
+             GZIPOutputStream gzip = new GZIPOutputStream(new BufferedOutputStream(file));
+             CheckedOutputStream checked = new CheckedOutputStream(gzip, new CRC32())) {
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(type);
+            out.writeLong(revision);
+            out.writeLong(baseRevision);
+            out.writeLong(timestamp);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Long> e : entries.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue());
+            }
+            out.flush();
+            // 校验值本身不计入校验
+            new DataOutputStream(gzip).writeLong(checked.getChecksum().getValue());
+        }
+    }
+
+    /**
+     * 按小时 / 按天保留全量备份：每个时间段保留最新的一份，最新的全量备份总是保留
+     */
+    private static void applyRetention(Path dir) {
+        List<BackupInfo> backups;
+        try {
+            backups = listBackups(dir);
+        } catch (IOException e) {
+            LittleTomato.LOGGER.warn("Failed to list warehouse backups", e);
+            return;
+        }
+
+        // listBackups 已按时间从新到旧排列
+        List<BackupInfo> fulls = backups.stream().filter(BackupInfo::full).toList();
+
+        LocalDateTime now = LocalDateTime.now();
+        Set<LocalDateTime> hours = new HashSet<>();
+        Set<LocalDateTime> days = new HashSet<>();
+        Set<Long> keptRevisions = new HashSet<>();
+
+        for (int i = 0; i < fulls.size(); i++) {
+            BackupInfo backup = fulls.get(i);
+            LocalDateTime hour = backup.time().truncatedTo(ChronoUnit.HOURS);
+            LocalDateTime day = backup.time().truncatedTo(ChronoUnit.DAYS);
+
+            boolean keep = i == 0;
+            if (hour.isAfter(now.minusHours(WarehouseConfig.backupKeepHourly)) && hours.add(hour)) keep = true;
+            if (day.isAfter(now.minusDays(WarehouseConfig.backupKeepDaily)) && days.add(day)) keep = true;
+
+            if (keep) {
+                keptRevisions.add(backup.revision());
+            } else {
+                delete(backup.path());
+            }
+        }
+
+        for (BackupInfo backup : backups) {
+            if (!backup.full() && !keptRevisions.contains(backup.baseRevision())) {
+                delete(backup.path());
+            }
+        }
+    }
+
+    /**
+     * 只保留最新的 LEGACY_KEEP 份旧版文本备份（文件名按时间排序）
+     */
+    private static void pruneLegacyBackups(Path dir) {
+        List<Path> legacy;
+        try (var files = Files.list(dir)) {
+            legacy = files.filter(path -> LEGACY_FILE_PATTERN.matcher(path.getFileName().toString()).matches())
+                    .sorted().toList();
+        } catch (IOException e) {
+            LittleTomato.LOGGER.warn("Failed to list legacy warehouse backups", e);
+            return;
+        }
+        for (int i = 0; i < legacy.size() - LEGACY_KEEP; i++) {
+            delete(legacy.get(i));
+        }
+    }
+
+    private static void deleteTempFiles(Path dir) {
+        if (!Files.isDirectory(dir)) return;
+        try (var files = Files.list(dir)) {
+            files.filter(path -> path.getFileName().toString().endsWith(TEMP_SUFFIX)).forEach(WarehouseBackups::delete);
+        } catch (IOException e) {
+            LittleTomato.LOGGER.warn("Failed to clean up warehouse backup temp files", e);
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LittleTomato.LOGGER.warn("Failed to delete old warehouse backup {}", path, e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.littletomato.warehouse;
+
+import com.littletomato.LittleTomato;
+import net.fabricmc.fabric.api.itemgroup.v1.ItemGroupEvents;
+import net.fabricmc.fabric.api.object.builder.v1.block.entity.FabricBlockEntityTypeBuilder;
+import net.fabricmc.fabric.api.transfer.v1.item.ItemStorage;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.Identifier;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.item.BlockItem;
+import net.minecraft.world.item.CreativeModeTabs;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.SoundType;
+import net.minecraft.world.level.block.entity.BlockEntityType;
+import net.minecraft.world.level.block.state.BlockBehaviour;
+
+/**
+ * 仓库相关方块的注册
+ */
+public class WarehouseBlocks {
+
+    private static final Identifier WAREHOUSE_INTERFACE_ID =
+            Identifier.fromNamespaceAndPath(LittleTomato.MOD_ID, "warehouse_interface");
+    private static final Identifier WAREHOUSE_PORT_ID =
+            Identifier.fromNamespaceAndPath(LittleTomato.MOD_ID, "warehouse_port");
+
+    public static final Block WAREHOUSE_INTERFACE = Registry.register(BuiltInRegistries.BLOCK, WAREHOUSE_INTERFACE_ID,
+            new WarehouseInterfaceBlock(BlockBehaviour.Properties.of()
+                    .setId(ResourceKey.create(Registries.BLOCK, WAREHOUSE_INTERFACE_ID))
+                    .strength(3.5f)
+                    .sound(SoundType.METAL)));
+
+    public static final Item WAREHOUSE_INTERFACE_ITEM = Registry.register(BuiltInRegistries.ITEM,
+            WAREHOUSE_INTERFACE_ID, new BlockItem(WAREHOUSE_INTERFACE, new Item.Properties()
+                    .setId(ResourceKey.create(Registries.ITEM, WAREHOUSE_INTERFACE_ID))
+                    .useBlockDescriptionPrefix()));
+
+    public static final BlockEntityType<WarehouseInterfaceBlockEntity> WAREHOUSE_INTERFACE_ENTITY =
+            Registry.register(BuiltInRegistries.BLOCK_ENTITY_TYPE, WAREHOUSE_INTERFACE_ID,
+                    FabricBlockEntityTypeBuilder.create(WarehouseInterfaceBlockEntity::new, WAREHOUSE_INTERFACE)
+                            .build());
+
+    public static final Block WAREHOUSE_PORT = Registry.register(BuiltInRegistries.BLOCK, WAREHOUSE_PORT_ID,
+            new WarehousePortBlock(BlockBehaviour.Properties.of()
+                    .setId(ResourceKey.create(Registries.BLOCK, WAREHOUSE_PORT_ID))
+                    .strength(3.5f)
+                    .sound(SoundType.METAL)));
+
+    public static final Item WAREHOUSE_PORT_ITEM = Registry.register(BuiltInRegistries.ITEM,
+            WAREHOUSE_PORT_ID, new BlockItem(WAREHOUSE_PORT, new Item.Properties()
+                    .setId(ResourceKey.create(Registries.ITEM, WAREHOUSE_PORT_ID))
+                    .useBlockDescriptionPrefix()));
+
+    public static final BlockEntityType<WarehousePortBlockEntity> WAREHOUSE_PORT_ENTITY =
+            Registry.register(BuiltInRegistries.BLOCK_ENTITY_TYPE, WAREHOUSE_PORT_ID,
+                    FabricBlockEntityTypeBuilder.create(WarehousePortBlockEntity::new, WAREHOUSE_PORT).build());
+
+    public static void register() {
+        // 所有方向都暴露同一个仓库
+        ItemStorage.SIDED.registerForBlockEntity((entity, direction) -> entity.getStorage(),
+                WAREHOUSE_INTERFACE_ENTITY);
+        ItemGroupEvents.modifyEntriesEvent(CreativeModeTabs.FUNCTIONAL_BLOCKS)
+                .register(entries -> {
+                    entries.accept(WAREHOUSE_INTERFACE_ITEM);
+                    entries.accept(WAREHOUSE_PORT_ITEM);
+                });
+    }
+}
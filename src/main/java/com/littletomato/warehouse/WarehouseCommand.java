@@ -3,30 +3,91 @@ package com.littletomato.warehouse;
 import com.littletomato.LittleTomato;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.context.CommandContext;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import com.mojang.brigadier.exceptions.DynamicCommandExceptionType;
 import com.mojang.brigadier.exceptions.SimpleCommandExceptionType;
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.mojang.brigadier.suggestion.SuggestionsBuilder;
+import net.minecraft.ChatFormatting;
 import net.minecraft.commands.CommandBuildContext;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
+import net.minecraft.commands.SharedSuggestionProvider;
+import net.minecraft.commands.arguments.EntityArgument;
+import net.minecraft.commands.arguments.ResourceOrTagKeyArgument;
 import net.minecraft.commands.arguments.item.ItemArgument;
 import net.minecraft.commands.arguments.item.ItemInput;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.network.chat.ClickEvent;
 import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.HoverEvent;
+import net.minecraft.network.chat.MutableComponent;
+import net.minecraft.resources.Identifier;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.tags.TagKey;
 import net.minecraft.world.item.Item;
+import net.minecraft.world.scores.PlayerTeam;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 
 public class WarehouseCommand {
 
     private static final SimpleCommandExceptionType ERROR_NOT_SIMPLE =
-            new SimpleCommandExceptionType(Component.literal("Only simple items (no damage/NBT) can be stored!"));
+            new SimpleCommandExceptionType(WarehouseState.OperationResult.NOT_SIMPLE.getMessage());
     private static final SimpleCommandExceptionType ERROR_NOT_STACKABLE =
-            new SimpleCommandExceptionType(Component.literal("Only stackable items are allowed!"));
+            new SimpleCommandExceptionType(WarehouseState.OperationResult.NOT_STACKABLE.getMessage());
     private static final SimpleCommandExceptionType ERROR_INSUFFICIENT_STOCK =
-            new SimpleCommandExceptionType(Component.literal("Insufficient stock in the warehouse!"));
+            new SimpleCommandExceptionType(WarehouseState.OperationResult.INSUFFICIENT_STOCK.getMessage());
     private static final SimpleCommandExceptionType ERROR_NOT_IN_INVENTORY =
-            new SimpleCommandExceptionType(Component.literal("You don't have enough simple items in your inventory!"));
+            new SimpleCommandExceptionType(WarehouseState.OperationResult.NOT_IN_INVENTORY.getMessage());
+    private static final SimpleCommandExceptionType ERROR_STORAGE_FULL =
+            new SimpleCommandExceptionType(WarehouseState.OperationResult.STORAGE_FULL.getMessage());
+    private static final SimpleCommandExceptionType ERROR_INVENTORY_FULL =
+            new SimpleCommandExceptionType(WarehouseState.OperationResult.INVENTORY_FULL.getMessage());
+    private static final SimpleCommandExceptionType ERROR_INVALID_COUNT =
+            new SimpleCommandExceptionType(WarehouseState.OperationResult.INVALID_COUNT.getMessage());
+    private static final DynamicCommandExceptionType ERROR_UNKNOWN_ITEM =
+            new DynamicCommandExceptionType(id -> Component.literal("Unknown item: " + id));
+    private static final DynamicCommandExceptionType ERROR_BAD_COUNT =
+            new DynamicCommandExceptionType(token -> Component.literal("Invalid count in: " + token));
+    private static final DynamicCommandExceptionType ERROR_BACKUP =
+            new DynamicCommandExceptionType(message -> Component.literal("Backup error: " + message));
+    private static final SimpleCommandExceptionType ERROR_NO_TEAM =
+            new SimpleCommandExceptionType(Component.literal("You are not on a team."));
+    private static final DynamicCommandExceptionType ERROR_UNKNOWN_WAREHOUSE =
+            new DynamicCommandExceptionType(name -> Component.literal("Unknown warehouse: " + name));
+    private static final DynamicCommandExceptionType ERROR_NO_ACCESS =
+            new DynamicCommandExceptionType(name -> Component.literal("You are not a member of warehouse " + name));
+    private static final DynamicCommandExceptionType ERROR_NOT_A_TAG =
+            new DynamicCommandExceptionType(id -> Component.literal("Expected an item tag (#namespace:path): " + id));
+    private static final DynamicCommandExceptionType ERROR_UNKNOWN_SORT =
+            new DynamicCommandExceptionType(sort -> Component.literal("Unknown sort order: " + sort));
+    private static final DynamicCommandExceptionType ERROR_WAREHOUSE_EXISTS =
+            new DynamicCommandExceptionType(name -> Component.literal("Warehouse already exists: " + name));
+
+    // /wh backup diff 最多逐条列出的物品数
+    private static final int MAX_DIFF_LINES = 20;
+    // /wh list-all 每页显示的物品种类数
+    private static final int LIST_PAGE_SIZE = 20;
+    // /wh fetch 和 /wh list 最多补全的物品种类数
+    private static final int MAX_ITEM_SUGGESTIONS = 50;
 
     public static void registerCommand() {
         CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> {
@@ -46,6 +107,13 @@ public class WarehouseCommand {
                                         )
                                 )
                         )
+                        // /wh store-many <item[*count]> [item[*count]] ...
+                        .then(Commands.literal("store-many")
+                                .then(Commands.argument("items", StringArgumentType.greedyString())
+                                        .executes(ctx -> storeManyItems(ctx.getSource(),
+                                                StringArgumentType.getString(ctx, "items")))
+                                )
+                        )
                         // /wh store-all
                         .then(Commands.literal("store-all")
                                 .executes(ctx -> storeAllItems(ctx.getSource()))
@@ -53,41 +121,224 @@ public class WarehouseCommand {
                         // /wh fetch <item> <count>
                         .then(Commands.literal("fetch")
                                 .then(Commands.argument("item", ItemArgument.item(context))
+                                        .suggests(WarehouseCommand::suggestStockedItems)
                                         .then(Commands.argument("count", IntegerArgumentType.integer(1))
                                                 .executes(ctx -> fetchItem(ctx.getSource(), ItemArgument.getItem(ctx,
                                                         "item"), IntegerArgumentType.getInteger(ctx, "count")))
                                         )
                                 )
                         )
+                        // /wh fetch-tag <#tag> <count>
+                        .then(Commands.literal("fetch-tag")
+                                .then(Commands.argument("tag", ResourceOrTagKeyArgument.resourceOrTagKey(Registries.ITEM))
+                                        .suggests(WarehouseCommand::suggestStockedTags)
+                                        .then(Commands.argument("count", IntegerArgumentType.integer(1))
+                                                .executes(ctx -> fetchTag(ctx.getSource(), getItemTag(ctx),
+                                                        IntegerArgumentType.getInteger(ctx, "count")))
+                                        )
+                                )
+                        )
+                        // /wh store-tag <#tag>
+                        .then(Commands.literal("store-tag")
+                                .then(Commands.argument("tag", ResourceOrTagKeyArgument.resourceOrTagKey(Registries.ITEM))
+                                        .executes(ctx -> storeTag(ctx.getSource(), getItemTag(ctx)))
+                                )
+                        )
+                        // /wh list-tag <#tag>
+                        .then(Commands.literal("list-tag")
+                                .then(Commands.argument("tag", ResourceOrTagKeyArgument.resourceOrTagKey(Registries.ITEM))
+                                        .suggests(WarehouseCommand::suggestStockedTags)
+                                        .executes(ctx -> listTag(ctx.getSource(), getItemTag(ctx)))
+                                )
+                        )
                         // /wh list <item>
                         .then(Commands.literal("list")
                                 .then(Commands.argument("item", ItemArgument.item(context))
+                                        .suggests(WarehouseCommand::suggestStockedItems)
                                         .executes(ctx -> listItem(ctx.getSource(), ItemArgument.getItem(ctx, "item")))
                                 )
                         )
-                        // /wh list-all
+                        // /wh list-all [page] [sort]
                         .then(Commands.literal("list-all")
-                                .executes(ctx -> listAllItems(ctx.getSource()))
+                                .executes(ctx -> listAllItems(ctx.getSource(), 1, WarehouseQueryIndex.SortKey.NAME))
+                                .then(Commands.argument("page", IntegerArgumentType.integer(1))
+                                        .executes(ctx -> listAllItems(ctx.getSource(),
+                                                IntegerArgumentType.getInteger(ctx, "page"),
+                                                WarehouseQueryIndex.SortKey.NAME))
+                                        .then(Commands.argument("sort", StringArgumentType.word())
+                                                .suggests(WarehouseCommand::suggestSortKeys)
+                                                .executes(ctx -> listAllItems(ctx.getSource(),
+                                                        IntegerArgumentType.getInteger(ctx, "page"),
+                                                        parseSortKey(StringArgumentType.getString(ctx, "sort"))))
+                                        )
+                                )
+                        )
+                        // /wh use [global|personal|team|named <name>]
+                        .then(Commands.literal("use")
+                                .executes(ctx -> showWarehouse(ctx.getSource()))
+                                .then(Commands.literal("global")
+                                        .executes(ctx -> useWarehouse(ctx.getSource(), WarehouseRegistry.GLOBAL))
+                                )
+                                .then(Commands.literal("personal")
+                                        .executes(ctx -> useWarehouse(ctx.getSource(), WarehouseRegistry.playerWarehouse(
+                                                ctx.getSource().getPlayerOrException().getUUID())))
+                                )
+                                .then(Commands.literal("team")
+                                        .executes(ctx -> useTeamWarehouse(ctx.getSource()))
+                                )
+                                .then(Commands.literal("named")
+                                        .then(Commands.argument("name", StringArgumentType.word())
+                                                .suggests(WarehouseCommand::suggestNamedWarehouses)
+                                                .executes(ctx -> useNamedWarehouse(ctx.getSource(),
+                                                        StringArgumentType.getString(ctx, "name")))
+                                        )
+                                )
+                        )
+                        // /wh warehouse list|create <name>|add-member <name> <players>|remove-member <name> <players>
+                        .then(Commands.literal("warehouse")
+                                .requires(Commands.hasPermission(Commands.LEVEL_GAMEMASTERS))
+                                .then(Commands.literal("list")
+                                        .executes(ctx -> listWarehouses(ctx.getSource()))
+                                )
+                                .then(Commands.literal("create")
+                                        .then(Commands.argument("name", StringArgumentType.word())
+                                                .executes(ctx -> createWarehouse(ctx.getSource(),
+                                                        StringArgumentType.getString(ctx, "name")))
+                                        )
+                                )
+                                .then(Commands.literal("add-member")
+                                        .then(Commands.argument("name", StringArgumentType.word())
+                                                .suggests(WarehouseCommand::suggestNamedWarehouses)
+                                                .then(Commands.argument("players", EntityArgument.players())
+                                                        .executes(ctx -> setMembers(ctx.getSource(),
+                                                                StringArgumentType.getString(ctx, "name"),
+                                                                EntityArgument.getPlayers(ctx, "players"), true))
+                                                )
+                                        )
+                                )
+                                .then(Commands.literal("remove-member")
+                                        .then(Commands.argument("name", StringArgumentType.word())
+                                                .suggests(WarehouseCommand::suggestNamedWarehouses)
+                                                .then(Commands.argument("players", EntityArgument.players())
+                                                        .executes(ctx -> setMembers(ctx.getSource(),
+                                                                StringArgumentType.getString(ctx, "name"),
+                                                                EntityArgument.getPlayers(ctx, "players"), false))
+                                                )
+                                        )
+                                )
+                        )
+                        // /wh stats [reset]
+                        .then(Commands.literal("stats")
+                                .requires(Commands.hasPermission(Commands.LEVEL_GAMEMASTERS))
+                                .executes(ctx -> showStats(ctx.getSource()))
+                                .then(Commands.literal("reset")
+                                        .executes(ctx -> resetStats(ctx.getSource()))
+                                )
+                        )
+                        // /wh backup list [warehouse]|diff <warehouse> <name>|restore <warehouse> <name>
+                        // warehouse 为 global、player.<uuid>、team.<队伍名> 或 named.<名称>
+                        .then(Commands.literal("backup")
+                                .requires(Commands.hasPermission(Commands.LEVEL_GAMEMASTERS))
+                                .then(Commands.literal("list")
+                                        .executes(ctx -> listBackups(ctx.getSource(), WarehouseRegistry.GLOBAL))
+                                        .then(Commands.argument("warehouse", StringArgumentType.word())
+                                                .suggests(WarehouseCommand::suggestBackupWarehouses)
+                                                .executes(ctx -> listBackups(ctx.getSource(), getBackupWarehouse(ctx)))
+                                        )
+                                )
+                                .then(Commands.literal("diff")
+                                        .then(Commands.argument("warehouse", StringArgumentType.word())
+                                                .suggests(WarehouseCommand::suggestBackupWarehouses)
+                                                .then(Commands.argument("name", StringArgumentType.word())
+                                                        .suggests(WarehouseCommand::suggestBackups)
+                                                        .executes(ctx -> diffBackup(ctx.getSource(), getBackupWarehouse(ctx),
+                                                                StringArgumentType.getString(ctx, "name")))
+                                                )
+                                        )
+                                )
+                                .then(Commands.literal("restore")
+                                        .then(Commands.argument("warehouse", StringArgumentType.word())
+                                                .suggests(WarehouseCommand::suggestBackupWarehouses)
+                                                .then(Commands.argument("name", StringArgumentType.word())
+                                                        .suggests(WarehouseCommand::suggestBackups)
+                                                        .executes(ctx -> restoreBackup(ctx.getSource(),
+                                                                getBackupWarehouse(ctx),
+                                                                StringArgumentType.getString(ctx, "name")))
+                                                )
+                                        )
+                                )
                         )
         );
     }
 
     private static int storeItem(CommandSourceStack source, ItemInput itemInput, int count) throws CommandSyntaxException {
         ServerPlayer player = source.getPlayerOrException();
-        WarehouseState state = WarehouseState.getCloudWarehouseState(source.getServer());
+        WarehouseState state = getWarehouse(source);
         Item item = itemInput.getItem();
 
         translateResult(state.deposit(player, item, count));
 
         // success
-        LittleTomato.broadcastUpdate(source.getServer());
+        LittleTomato.broadcastUpdate(source.getServer(), state);
         source.sendSuccess(() -> Component.literal("Successfully stored " + count + "x ").append(item.getName()), true);
         return count;
     }
 
+    /**
+     * 一次存入多种物品，格式如 "cobblestone*128 minecraft:dirt andesite"，不写数量表示存入背包中的全部
+     */
+    private static int storeManyItems(CommandSourceStack source, String input) throws CommandSyntaxException {
+        ServerPlayer player = source.getPlayerOrException();
+        WarehouseState state = getWarehouse(source);
+        InventoryIndex index = InventoryIndex.build(player.getInventory());
+
+        Map<Item, Integer> requests = new LinkedHashMap<>();
+        for (String token : input.trim().split("[\\s,]+")) {
+            if (token.isEmpty()) continue;
+
+            int star = token.indexOf('*');
+            String id = star < 0 ? token : token.substring(0, star);
+            Identifier key = Identifier.tryParse(id);
+            Optional<Item> item = key == null ? Optional.empty() : BuiltInRegistries.ITEM.getOptional(key);
+            if (item.isEmpty()) throw ERROR_UNKNOWN_ITEM.create(id);
+
+            int count;
+            if (star < 0) {
+                count = index.getTotal(item.get());
+                // 没写数量且背包里没有的物品直接跳过
+                if (count == 0) continue;
+            } else {
+                try {
+                    count = Integer.parseInt(token.substring(star + 1));
+                } catch (NumberFormatException e) {
+                    throw ERROR_BAD_COUNT.create(token);
+                }
+                if (count <= 0) throw ERROR_BAD_COUNT.create(token);
+            }
+            try {
+                requests.merge(item.get(), count, Math::addExact);
+            } catch (ArithmeticException e) {
+                throw ERROR_BAD_COUNT.create(token);
+            }
+        }
+
+        // 多种物品的总数可能超出 int
+        long totalCount = requests.values().stream().mapToLong(Integer::longValue).sum();
+        if (totalCount == 0) throw ERROR_NOT_IN_INVENTORY.create();
+
+        translateResult(state.depositMany(index, requests));
+
+        // success
+        LittleTomato.broadcastUpdate(source.getServer(), state);
+        source.sendSuccess(() -> Component.literal("Successfully stored " + totalCount + " items (")
+                .append(String.valueOf(requests.size()))
+                .append(" types) in the warehouse."), true);
+        return (int) Math.min(totalCount, Integer.MAX_VALUE);
+    }
+
     private static int storeAllItems(CommandSourceStack source) throws CommandSyntaxException {
         ServerPlayer player = source.getPlayerOrException();
-        WarehouseState state = WarehouseState.getCloudWarehouseState(source.getServer());
+        WarehouseState state = getWarehouse(source);
 
         Map<Item, Integer> deposited = state.depositAll(player);
 
@@ -99,7 +350,7 @@ public class WarehouseCommand {
         int totalCount = deposited.values().stream().mapToInt(Integer::intValue).sum();
 
         // success
-        LittleTomato.broadcastUpdate(source.getServer());
+        LittleTomato.broadcastUpdate(source.getServer(), state);
         source.sendSuccess(() -> Component.literal("Successfully stored " + totalCount + " items (")
                 .append(String.valueOf(deposited.size()))
                 .append(" types) in the warehouse."), true);
@@ -109,14 +360,14 @@ public class WarehouseCommand {
 
     private static int fetchItem(CommandSourceStack source, ItemInput itemInput, int count) throws CommandSyntaxException {
         ServerPlayer player = source.getPlayerOrException();
-        WarehouseState state = WarehouseState.getCloudWarehouseState(source.getServer());
+        WarehouseState state = getWarehouse(source);
         Item item = itemInput.getItem();
 
         translateResult(state.withdraw(player, item, count));
 
         if (count > 0) {
             // success
-            LittleTomato.broadcastUpdate(source.getServer());
+            LittleTomato.broadcastUpdate(source.getServer(), state);
         }
         source.sendSuccess(() -> Component.literal("Successfully fetched " + count + "x ").append(item.getName()),
                 true);
@@ -125,31 +376,416 @@ public class WarehouseCommand {
 
     private static int listItem(CommandSourceStack source, ItemInput itemInput) {
         Item item = itemInput.getItem();
-        WarehouseState state = WarehouseState.getCloudWarehouseState(source.getServer());
-        int stock = state.getItems().getOrDefault(item, 0);
+        WarehouseState state = getWarehouse(source);
+        long stock = state.getStock(item);
 
         source.sendSuccess(() -> Component.literal("Warehouse stock for ").append(item.getName()).append(": " + stock), false);
-        return stock;
+        return (int) Math.min(stock, Integer.MAX_VALUE);
+    }
+
+    private static TagKey<Item> getItemTag(CommandContext<CommandSourceStack> ctx) throws CommandSyntaxException {
+        ResourceOrTagKeyArgument.Result<Item> result =
+                ResourceOrTagKeyArgument.getResourceOrTagKey(ctx, "tag", Registries.ITEM, ERROR_NOT_A_TAG);
+        Optional<TagKey<Item>> tag = result.unwrap().right();
+        if (tag.isEmpty()) throw ERROR_NOT_A_TAG.create(result.asPrintable());
+        return tag.get();
+    }
+
+    private static int fetchTag(CommandSourceStack source, TagKey<Item> tag, int count) throws CommandSyntaxException {
+        ServerPlayer player = source.getPlayerOrException();
+        WarehouseState state = getWarehouse(source);
+
+        translateResult(state.withdrawTag(player, tag, count));
+
+        // success
+        LittleTomato.broadcastUpdate(source.getServer(), state);
+        source.sendSuccess(() -> Component.literal("Successfully fetched " + count + " items tagged #"
+                + tag.location() + "."), true);
+        return count;
+    }
+
+    private static int storeTag(CommandSourceStack source, TagKey<Item> tag) throws CommandSyntaxException {
+        ServerPlayer player = source.getPlayerOrException();
+        WarehouseState state = getWarehouse(source);
+
+        Map<Item, Integer> deposited = state.depositTag(player, tag);
+        if (deposited.isEmpty()) {
+            source.sendSuccess(() -> Component.literal("No items tagged #" + tag.location()
+                    + " in your inventory could be stored."), false);
+            return 0;
+        }
+
+        int totalCount = deposited.values().stream().mapToInt(Integer::intValue).sum();
+
+        // success
+        LittleTomato.broadcastUpdate(source.getServer(), state);
+        source.sendSuccess(() -> Component.literal("Successfully stored " + totalCount + " items (")
+                .append(String.valueOf(deposited.size()))
+                .append(" types) tagged #" + tag.location() + " in the warehouse."), true);
+        return totalCount;
+    }
+
+    /**
+     * 列出标签下有库存的物品，按数量从多到少，最多一页，整体合并为一条消息
+     */
+    private static int listTag(CommandSourceStack source, TagKey<Item> tag) {
+        WarehouseState state = getWarehouse(source);
+        List<Item> items = new ArrayList<>(state.getTagIndex().getStocked(tag));
+
+        if (items.isEmpty()) {
+            source.sendSuccess(() -> Component.literal("No items tagged #" + tag.location() + " are in stock."), false);
+            return 0;
+        }
+
+        items.sort(Comparator.comparingLong(state::getStock).reversed());
+        long total = 0;
+        for (Item item : items) {
+            total += state.getStock(item);
+        }
+
+        MutableComponent message = Component.literal("--- Warehouse stock for #" + tag.location() + ": " + total
+                + " items, " + items.size() + " types ---");
+        for (Item item : items.subList(0, Math.min(items.size(), LIST_PAGE_SIZE))) {
+            message.append("\n- ").append(item.getName()).append(": " + state.getStock(item));
+        }
+        if (items.size() > LIST_PAGE_SIZE) {
+            message.append("\n... and " + (items.size() - LIST_PAGE_SIZE) + " more types");
+        }
+
+        source.sendSuccess(() -> message, false);
+        return items.size();
     }
 
-    private static int listAllItems(CommandSourceStack source) {
-        WarehouseState state = WarehouseState.getCloudWarehouseState(source.getServer());
-        Map<Item, Integer> allItems = state.getItems();
+    /**
+     * 只补全当前仓库中至少有一种物品在库的标签
+     */
+    private static CompletableFuture<Suggestions> suggestStockedTags(CommandContext<CommandSourceStack> ctx,
+                                                                    SuggestionsBuilder builder) {
+        return SharedSuggestionProvider.suggest(getWarehouse(ctx.getSource()).getTagIndex().getTags().stream()
+                .map(tag -> "#" + tag.location()), builder);
+    }
 
-        long activeCount = allItems.entrySet().stream().filter(e -> e.getValue() > 0).count();
+    /**
+     * 只补全当前仓库中有库存的物品，优先给出数量最多的，提示中显示库存数量
+     */
+    private static CompletableFuture<Suggestions> suggestStockedItems(CommandContext<CommandSourceStack> ctx,
+                                                                     SuggestionsBuilder builder) {
+        WarehouseState state = getWarehouse(ctx.getSource());
+        for (Item item : state.getCompletionIndex().complete(builder.getRemaining(), MAX_ITEM_SUGGESTIONS)) {
+            builder.suggest(BuiltInRegistries.ITEM.getKey(item).toString(),
+                    Component.literal(state.getStock(item) + " in stock"));
+        }
+        return builder.buildFuture();
+    }
 
-        if (activeCount == 0) {
+    /**
+     * 分页列出库存：从查询索引的排序缓存中只取一页，整页合并为一条消息，末尾附带可点击的翻页按钮
+     */
+    private static int listAllItems(CommandSourceStack source, int page, WarehouseQueryIndex.SortKey sort) {
+        WarehouseState state = getWarehouse(source);
+        int total = state.stock().size();
+        if (total == 0) {
             source.sendSuccess(() -> Component.literal("The warehouse is currently empty."), false);
             return 0;
         }
 
-        source.sendSuccess(() -> Component.literal("--- Cloud Warehouse Inventory ---"), false);
-        allItems.forEach((item, count) -> {
-            if (count > 0) {
-                source.sendSuccess(() -> Component.literal("- ").append(item.getName()).append(": " + count), false);
+        // 超出末页时显示最后一页
+        int pages = (total + LIST_PAGE_SIZE - 1) / LIST_PAGE_SIZE;
+        int shownPage = Math.min(page, pages);
+        WarehouseQueryIndex.Window window = state.getQueryIndex().query("", sort, (shownPage - 1) * LIST_PAGE_SIZE,
+                LIST_PAGE_SIZE);
+
+        String sortName = sort.name().toLowerCase(Locale.ROOT);
+        MutableComponent message = Component.literal("--- Cloud Warehouse Inventory (page " + shownPage + "/" + pages
+                + ", " + total + " types, by " + sortName + ") ---");
+        for (Item item : window.items()) {
+            message.append("\n- ").append(item.getName()).append(": " + state.getStock(item));
+        }
+
+        if (pages > 1) {
+            message.append("\n");
+        }
+        if (shownPage > 1) {
+            message.append(pageButton("[< Prev]", shownPage - 1, sortName));
+        }
+        if (shownPage > 1 && shownPage < pages) {
+            message.append(" ");
+        }
+        if (shownPage < pages) {
+            message.append(pageButton("[Next >]", shownPage + 1, sortName));
+        }
+
+        source.sendSuccess(() -> message, false);
+        return window.items().size();
+    }
+
+    private static Component pageButton(String label, int page, String sortName) {
+        String command = "/wh list-all " + page + " " + sortName;
+        return Component.literal(label).withStyle(style -> style
+                .withColor(ChatFormatting.AQUA)
+                .withClickEvent(new ClickEvent.RunCommand(command))
+                .withHoverEvent(new HoverEvent.ShowText(Component.literal(command))));
+    }
+
+    private static WarehouseQueryIndex.SortKey parseSortKey(String name) throws CommandSyntaxException {
+        for (WarehouseQueryIndex.SortKey sort : WarehouseQueryIndex.SortKey.values()) {
+            if (sort.name().equalsIgnoreCase(name)) return sort;
+        }
+        throw ERROR_UNKNOWN_SORT.create(name);
+    }
+
+    private static CompletableFuture<Suggestions> suggestSortKeys(CommandContext<CommandSourceStack> ctx,
+                                                                 SuggestionsBuilder builder) {
+        return SharedSuggestionProvider.suggest(Arrays.stream(WarehouseQueryIndex.SortKey.values())
+                .map(sort -> sort.name().toLowerCase(Locale.ROOT)), builder);
+    }
+
+    /**
+     * 玩家执行的命令作用于其选择的仓库，控制台和命令方块作用于全局仓库
+     */
+    private static WarehouseState getWarehouse(CommandSourceStack source) {
+        ServerPlayer player = source.getPlayer();
+        return player == null ? WarehouseState.getCloudWarehouseState(source.getServer())
+                : WarehouseRegistry.getSelected(player);
+    }
+
+    private static int showWarehouse(CommandSourceStack source) throws CommandSyntaxException {
+        ServerPlayer player = source.getPlayerOrException();
+        String name = WarehouseRegistry.getDisplayName(source.getServer(), WarehouseRegistry.getSelectedId(player));
+        source.sendSuccess(() -> Component.literal("You are using the " + name + " warehouse."), false);
+        return 1;
+    }
+
+    private static int useWarehouse(CommandSourceStack source, String warehouseId) throws CommandSyntaxException {
+        ServerPlayer player = source.getPlayerOrException();
+        WarehouseRegistry.select(player, warehouseId);
+        String name = WarehouseRegistry.getDisplayName(source.getServer(), warehouseId);
+        source.sendSuccess(() -> Component.literal("Now using the " + name + " warehouse."), false);
+        return 1;
+    }
+
+    private static int useTeamWarehouse(CommandSourceStack source) throws CommandSyntaxException {
+        PlayerTeam team = source.getPlayerOrException().getTeam();
+        if (team == null) throw ERROR_NO_TEAM.create();
+        return useWarehouse(source, WarehouseRegistry.teamWarehouse(team.getName()));
+    }
+
+    private static int useNamedWarehouse(CommandSourceStack source, String name) throws CommandSyntaxException {
+        ServerPlayer player = source.getPlayerOrException();
+        if (!WarehouseRegistryData.get(source.getServer()).exists(name)) throw ERROR_UNKNOWN_WAREHOUSE.create(name);
+        String warehouseId = WarehouseRegistry.namedWarehouse(name);
+        if (!WarehouseRegistry.canAccess(player, warehouseId)) throw ERROR_NO_ACCESS.create(name);
+        return useWarehouse(source, warehouseId);
+    }
+
+    private static CompletableFuture<Suggestions> suggestNamedWarehouses(CommandContext<CommandSourceStack> ctx,
+                                                                        SuggestionsBuilder builder) {
+        return SharedSuggestionProvider.suggest(WarehouseRegistryData.get(ctx.getSource().getServer()).getNames(),
+                builder);
+    }
+
+    private static int listWarehouses(CommandSourceStack source) {
+        WarehouseRegistryData data = WarehouseRegistryData.get(source.getServer());
+        source.sendSuccess(() -> Component.literal("--- Named Warehouses (" + WarehouseRegistry.getLoadedCount()
+                + " warehouses loaded) ---"), false);
+        for (String name : data.getNames()) {
+            int online = WarehouseRegistry.getMembers(source.getServer(), WarehouseRegistry.namedWarehouse(name)).size();
+            source.sendSuccess(() -> Component.literal("- " + name + " (" + online + " members online)"), false);
+        }
+        return data.getNames().size();
+    }
+
+    private static int createWarehouse(CommandSourceStack source, String name) throws CommandSyntaxException {
+        if (!WarehouseRegistryData.get(source.getServer()).create(name)) throw ERROR_WAREHOUSE_EXISTS.create(name);
+        source.sendSuccess(() -> Component.literal("Created warehouse " + name + "."), true);
+        return 1;
+    }
+
+    private static int setMembers(CommandSourceStack source, String name, Collection<ServerPlayer> players,
+                                  boolean member) throws CommandSyntaxException {
+        WarehouseRegistryData data = WarehouseRegistryData.get(source.getServer());
+        if (!data.exists(name)) throw ERROR_UNKNOWN_WAREHOUSE.create(name);
+
+        int changed = 0;
+        for (ServerPlayer player : players) {
+            if (data.setMember(name, player.getUUID(), member)) {
+                changed++;
             }
-        });
-        return (int) activeCount;
+        }
+        int changedCount = changed;
+        source.sendSuccess(() -> Component.literal((member ? "Added " : "Removed ") + changedCount
+                + " members " + (member ? "to " : "from ") + name + "."), true);
+        return changed;
+    }
+
+    private static int showStats(CommandSourceStack source) {
+        source.sendSuccess(() -> Component.literal(String.format(Locale.ROOT,
+                "--- Warehouse Stats (last %.0fs, %d warehouses loaded) ---",
+                WarehouseMetrics.getSecondsSinceReset(), WarehouseRegistry.getLoadedCount())), false);
+        for (WarehouseMetrics.Counter counter : WarehouseMetrics.Counter.values()) {
+            source.sendSuccess(() -> Component.literal("- " + WarehouseMetrics.formatCounter(counter)), false);
+        }
+        for (WarehouseMetrics.Timer timer : WarehouseMetrics.Timer.values()) {
+            source.sendSuccess(() -> Component.literal("- " + WarehouseMetrics.formatTimer(timer)), false);
+        }
+
+        Map<String, Long> received = WarehouseMetrics.getReceived();
+        if (!received.isEmpty()) {
+            StringBuilder line = new StringBuilder("- received by type:");
+            received.forEach((name, count) -> line.append(' ').append(name).append('=').append(count));
+            source.sendSuccess(() -> Component.literal(line.toString()), false);
+        }
+        return 1;
+    }
+
+    private static int resetStats(CommandSourceStack source) {
+        WarehouseMetrics.reset();
+        source.sendSuccess(() -> Component.literal("Warehouse stats reset."), true);
+        return 1;
+    }
+
+    private static String getBackupWarehouse(CommandContext<CommandSourceStack> ctx) throws CommandSyntaxException {
+        String argument = StringArgumentType.getString(ctx, "warehouse");
+        String warehouseId = WarehouseRegistry.fromArgument(argument);
+        if (warehouseId == null) throw ERROR_UNKNOWN_WAREHOUSE.create(argument);
+        return warehouseId;
+    }
+
+    /**
+     * 补全已加载的仓库和已有备份的仓库
+     */
+    private static CompletableFuture<Suggestions> suggestBackupWarehouses(CommandContext<CommandSourceStack> ctx,
+                                                                         SuggestionsBuilder builder) {
+        Set<String> warehouses = new TreeSet<>();
+        for (String warehouseId : WarehouseRegistry.getLoadedIds()) {
+            warehouses.add(WarehouseRegistry.toArgument(warehouseId));
+        }
+        try {
+            warehouses.addAll(WarehouseBackups.listBackedUpWarehouses(ctx.getSource().getServer()));
+        } catch (IOException e) {
+            // 只补全已加载的仓库
+        }
+        return SharedSuggestionProvider.suggest(warehouses, builder);
+    }
+
+    private static CompletableFuture<Suggestions> suggestBackups(CommandContext<CommandSourceStack> ctx,
+                                                                SuggestionsBuilder builder) {
+        try {
+            Path dir = WarehouseBackups.getBackupDir(ctx.getSource().getServer(), getBackupWarehouse(ctx));
+            return SharedSuggestionProvider.suggest(
+                    WarehouseBackups.listBackups(dir).stream().map(WarehouseBackups.BackupInfo::name), builder);
+        } catch (IOException | CommandSyntaxException e) {
+            return builder.buildFuture();
+        }
+    }
+
+    private static int listBackups(CommandSourceStack source, String warehouseId) throws CommandSyntaxException {
+        List<WarehouseBackups.BackupInfo> backups;
+        try {
+            backups = WarehouseBackups.listBackups(WarehouseBackups.getBackupDir(source.getServer(), warehouseId));
+        } catch (IOException e) {
+            throw ERROR_BACKUP.create(e.getMessage());
+        }
+
+        String displayName = WarehouseRegistry.getDisplayName(source.getServer(), warehouseId);
+        if (backups.isEmpty()) {
+            source.sendSuccess(() -> Component.literal("No backups found for the " + displayName + " warehouse."),
+                    false);
+            return 0;
+        }
+
+        source.sendSuccess(() -> Component.literal("--- Backups of the " + displayName
+                + " warehouse (newest first) ---"), false);
+        for (WarehouseBackups.BackupInfo backup : backups) {
+            String type = backup.full() ? "full" : "incremental of r" + backup.baseRevision();
+            source.sendSuccess(() -> Component.literal("- " + backup.name() + " (" + type + ")"), false);
+        }
+        return backups.size();
+    }
+
+    /**
+     * 对比备份与当前库存，列出数量不同的物品
+     */
+    private static int diffBackup(CommandSourceStack source, String warehouseId, String name)
+            throws CommandSyntaxException {
+        WarehouseBackups.RestoredBackup backup = readBackup(source, warehouseId, name);
+        WarehouseState state = WarehouseRegistry.get(source.getServer(), warehouseId);
+        Map<Item, Long> backupItems = backup.items();
+
+        List<Item> changed = new ArrayList<>();
+        int added = 0;
+        int removed = 0;
+        for (Map.Entry<Item, Long> e : state.getItems().entrySet()) {
+            long backupCount = backupItems.getOrDefault(e.getKey(), 0L);
+            if (backupCount != e.getValue()) {
+                changed.add(e.getKey());
+                if (backupCount == 0) removed++;
+            }
+        }
+        for (Map.Entry<Item, Long> e : backupItems.entrySet()) {
+            if (state.getStock(e.getKey()) == 0) {
+                changed.add(e.getKey());
+                added++;
+            }
+        }
+
+        if (changed.isEmpty()) {
+            source.sendSuccess(() -> Component.literal("The warehouse matches " + name + "."), false);
+            return 0;
+        }
+
+        int addedCount = added;
+        int removedCount = removed;
+        source.sendSuccess(() -> Component.literal("--- " + name + " vs current: " + changed.size() + " types differ ("
+                + addedCount + " only in backup, " + removedCount + " only in warehouse) ---"), false);
+        changed.sort(Comparator.comparing(item -> BuiltInRegistries.ITEM.getKey(item).toString()));
+        for (int i = 0; i < Math.min(changed.size(), MAX_DIFF_LINES); i++) {
+            Item item = changed.get(i);
+            long live = state.getStock(item);
+            long saved = backupItems.getOrDefault(item, 0L);
+            source.sendSuccess(() -> Component.literal("- ").append(item.getName())
+                    .append(": " + live + " -> " + saved), false);
+        }
+        if (changed.size() > MAX_DIFF_LINES) {
+            source.sendSuccess(() -> Component.literal("... and " + (changed.size() - MAX_DIFF_LINES) + " more"),
+                    false);
+        }
+        return changed.size();
+    }
+
+    /**
+     * 把库存整体还原为备份中的内容；还原前先为当前库存提交一次备份，还原后只推送一次更新
+     */
+    private static int restoreBackup(CommandSourceStack source, String warehouseId, String name)
+            throws CommandSyntaxException {
+        WarehouseBackups.RestoredBackup backup = readBackup(source, warehouseId, name);
+        WarehouseState state = WarehouseRegistry.get(source.getServer(), warehouseId);
+
+        WarehouseBackups.backup(state);
+        int changed = state.restoreFrom(backup.items());
+
+        if (changed > 0) {
+            LittleTomato.broadcastUpdate(source.getServer(), state);
+        }
+        source.sendSuccess(() -> Component.literal("Restored the "
+                + WarehouseRegistry.getDisplayName(source.getServer(), warehouseId) + " warehouse from " + name + ": "
+                + changed + " types changed."), true);
+        return changed;
+    }
+
+    private static WarehouseBackups.RestoredBackup readBackup(CommandSourceStack source, String warehouseId,
+                                                              String name) throws CommandSyntaxException {
+        WarehouseBackups.RestoredBackup backup;
+        try {
+            backup = WarehouseBackups.restore(WarehouseBackups.getBackupDir(source.getServer(), warehouseId), name);
+        } catch (IOException e) {
+            throw ERROR_BACKUP.create(e.getMessage());
+        }
+        if (backup.unknownItems() > 0) {
+            source.sendSuccess(() -> Component.literal("Skipped " + backup.unknownItems()
+                    + " entries for items that no longer exist."), false);
+        }
+        return backup;
     }
 
     private static void translateResult(WarehouseState.OperationResult result) throws CommandSyntaxException {
@@ -158,6 +794,9 @@ public class WarehouseCommand {
             case NOT_SIMPLE -> throw ERROR_NOT_SIMPLE.create();
             case INSUFFICIENT_STOCK -> throw ERROR_INSUFFICIENT_STOCK.create();
             case NOT_IN_INVENTORY -> throw ERROR_NOT_IN_INVENTORY.create();
+            case STORAGE_FULL -> throw ERROR_STORAGE_FULL.create();
+            case INVENTORY_FULL -> throw ERROR_INVENTORY_FULL.create();
+            case INVALID_COUNT -> throw ERROR_INVALID_COUNT.create();
             case SUCCESS -> {
             }
         }
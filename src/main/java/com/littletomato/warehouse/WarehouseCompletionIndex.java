@@ -0,0 +1,89 @@
+package com.littletomato.warehouse;
+
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.item.Item;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 命令补全用的前缀索引：只包含有库存的物品，按 ID 字符串有序保存，随每次库存变化增量更新。
+ * <p>
+ * 每个物品登记完整 ID 以及路径中每个 "_" 分段开始的后缀（与原版物品参数的补全规则一致，
+ * 输入 "log" 能匹配 minecraft:oak_log），一次补全只需在有序表中取出一个前缀区间。
+ */
+public class WarehouseCompletionIndex {
+
+    // 分隔后缀与完整 ID，使同一后缀下的多个物品各占一个键；'\0' 小于任何字符，不会越出前缀区间
+    private static final char KEY_SEPARATOR = '\0';
+
+    private final WarehouseState state;
+    private final TreeMap<String, Item> keys = new TreeMap<>();
+
+    WarehouseCompletionIndex(WarehouseState state) {
+        this.state = state;
+        state.stock().forEach((item, count) -> add(item));
+    }
+
+    /**
+     * 物品进出库存时调用（数量从 0 变为正数，或变为 0）；数量增减不改变索引，不必调用
+     */
+    void update(Item item, boolean inStock) {
+        if (inStock) {
+            add(item);
+        } else {
+            for (String key : getKeys(item)) {
+                keys.remove(key);
+            }
+        }
+    }
+
+    private void add(Item item) {
+        for (String key : getKeys(item)) {
+            keys.put(key, item);
+        }
+    }
+
+    /**
+     * ID 或其路径分段以 prefix 开头（忽略大小写）的有库存物品中数量最多的 limit 种，按数量从多到少排列
+     */
+    public List<Item> complete(String prefix, int limit) {
+        String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+        Set<Item> matched = new ReferenceOpenHashSet<>();
+        Comparator<Item> byCount = Comparator.comparingLong(state::getStock);
+        // 小顶堆只保留当前最多的 limit 种
+        PriorityQueue<Item> top = new PriorityQueue<>(byCount);
+        for (Item item : keys.subMap(lowerPrefix, true, lowerPrefix + Character.MAX_VALUE, false).values()) {
+            if (!matched.add(item)) continue;
+            top.add(item);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        List<Item> result = new ArrayList<>(top);
+        result.sort(byCount.reversed());
+        return result;
+    }
+
+    private static List<String> getKeys(Item item) {
+        String id = BuiltInRegistries.ITEM.getKey(item).toString();
+        List<String> result = new ArrayList<>();
+        result.add(id);
+        String path = id.substring(id.indexOf(':') + 1);
+        int start = 0;
+        while (true) {
+            result.add(path.substring(start) + KEY_SEPARATOR + id);
+            int next = path.indexOf('_', start);
+            if (next < 0) break;
+            start = next + 1;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,125 @@
+package com.littletomato.warehouse;
+
+import com.littletomato.LittleTomato;
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * 仓库配置，读取 config/little_tomato.properties，缺失的项会写回默认值
+ */
+public class WarehouseConfig {
+
+    private static final String FILE_NAME = LittleTomato.MOD_ID + ".properties";
+
+    // 两次同步推送之间的最小间隔（tick），1 表示每 tick 最多推送一次
+    public static int syncMinFlushIntervalTicks = 1;
+    // 每个 tick 最多执行的玩家操作数（所有玩家合计）
+    public static int schedulerMaxOpsPerTick = 200;
+    // 每个 tick 执行玩家操作的时间预算（微秒）
+    public static int schedulerTickBudgetMicros = 2000;
+    // 单个玩家最多排队的操作数，超出后拒绝并通知客户端降速
+    public static int schedulerMaxQueuedOpsPerPlayer = 64;
+    // 通知客户端降速时建议的等待时间（tick）
+    public static int schedulerRetryAfterTicks = 20;
+    // 预写日志的 fsync 策略：always / interval / never
+    public static WarehouseJournal.FsyncPolicy journalFsync = WarehouseJournal.FsyncPolicy.INTERVAL;
+    // interval 策略下两次 fsync 的最小间隔（毫秒）
+    public static int journalFsyncIntervalMillis = 1000;
+    // 仓库存储后端：saved_data（随世界保存整个仓库）/ mvstore（嵌入式数据库，只写出变化的条目）
+    public static WarehouseStorage.Backend storageBackend = WarehouseStorage.Backend.SAVED_DATA;
+    // 两次定期备份之间的间隔（分钟）
+    public static int backupIntervalMinutes = 30;
+    // 每隔多少次备份做一次全量备份，其余为增量备份
+    public static int backupFullEvery = 6;
+    // 最近多少小时内每小时保留一份全量备份
+    public static int backupKeepHourly = 24;
+    // 最近多少天内每天保留一份全量备份
+    public static int backupKeepDaily = 7;
+    // 最多同时加载的仓库数，超出后卸载最久未访问的仓库
+    public static int warehouseMaxLoaded = 64;
+    // 仓库空闲多少分钟后卸载
+    public static int warehouseIdleUnloadMinutes = 10;
+    // 仓库端口两次传输之间的间隔（tick）
+    public static int portTransferIntervalTicks = 8;
+    // 仓库端口每次传输最多移动的物品数
+    public static int portItemsPerTransfer = 64;
+    // 空闲端口两次重试之间的最长间隔（tick）
+    public static int portMaxIdleTicks = 200;
+    // 定期把仓库指标摘要写入日志的间隔（秒），0 表示不写
+    public static int metricsLogIntervalSeconds = 0;
+
+    public static void load() {
+        Path path = FabricLoader.getInstance().getConfigDir().resolve(FILE_NAME);
+        Properties props = new Properties();
+
+        if (Files.exists(path)) {
+            try (Reader reader = Files.newBufferedReader(path)) {
+                props.load(reader);
+            } catch (IOException e) {
+                LittleTomato.LOGGER.warn("Failed to read {}, using defaults", path, e);
+            }
+        }
+
+        syncMinFlushIntervalTicks = getInt(props, "sync.minFlushIntervalTicks", syncMinFlushIntervalTicks, 1);
+        schedulerMaxOpsPerTick = getInt(props, "scheduler.maxOpsPerTick", schedulerMaxOpsPerTick, 1);
+        schedulerTickBudgetMicros = getInt(props, "scheduler.tickBudgetMicros", schedulerTickBudgetMicros, 100);
+        schedulerMaxQueuedOpsPerPlayer = getInt(props, "scheduler.maxQueuedOpsPerPlayer",
+                schedulerMaxQueuedOpsPerPlayer, 1);
+        schedulerRetryAfterTicks = getInt(props, "scheduler.retryAfterTicks", schedulerRetryAfterTicks, 1);
+        journalFsync = getEnum(props, "journal.fsync", journalFsync);
+        journalFsyncIntervalMillis = getInt(props, "journal.fsyncIntervalMillis", journalFsyncIntervalMillis, 0);
+        storageBackend = getEnum(props, "storage.backend", storageBackend);
+        backupIntervalMinutes = getInt(props, "backup.intervalMinutes", backupIntervalMinutes, 1);
+        backupFullEvery = getInt(props, "backup.fullEvery", backupFullEvery, 1);
+        backupKeepHourly = getInt(props, "backup.keepHourly", backupKeepHourly, 0);
+        backupKeepDaily = getInt(props, "backup.keepDaily", backupKeepDaily, 0);
+        warehouseMaxLoaded = getInt(props, "warehouse.maxLoaded", warehouseMaxLoaded, 1);
+        warehouseIdleUnloadMinutes = getInt(props, "warehouse.idleUnloadMinutes", warehouseIdleUnloadMinutes, 1);
+        portTransferIntervalTicks = getInt(props, "port.transferIntervalTicks", portTransferIntervalTicks, 1);
+        portItemsPerTransfer = getInt(props, "port.itemsPerTransfer", portItemsPerTransfer, 1);
+        portMaxIdleTicks = getInt(props, "port.maxIdleTicks", portMaxIdleTicks, 1);
+        metricsLogIntervalSeconds = getInt(props, "metrics.logIntervalSeconds", metricsLogIntervalSeconds, 0);
+
+        try (Writer writer = Files.newBufferedWriter(path)) {
+            props.store(writer, "Little Tomato warehouse settings");
+        } catch (IOException e) {
+            LittleTomato.LOGGER.warn("Failed to write {}", path, e);
+        }
+    }
+
+    private static int getInt(Properties props, String key, int def, int min) {
+        String raw = props.getProperty(key);
+        int value = def;
+        if (raw != null) {
+            try {
+                value = Math.max(min, Integer.parseInt(raw.trim()));
+            } catch (NumberFormatException e) {
+                LittleTomato.LOGGER.warn("Invalid value '{}' for {}, using {}", raw, key, def);
+            }
+        }
+        props.setProperty(key, String.valueOf(value));
+        return value;
+    }
+
+    private static <E extends Enum<E>> E getEnum(Properties props, String key, E def) {
+        String raw = props.getProperty(key);
+        E value = def;
+        if (raw != null) {
+            try {
+                value = Enum.valueOf(def.getDeclaringClass(), raw.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                LittleTomato.LOGGER.warn("Invalid value '{}' for {}, using {}", raw, key,
+                        def.name().toLowerCase(Locale.ROOT));
+            }
+        }
+        props.setProperty(key, value.name().toLowerCase(Locale.ROOT));
+        return value;
+    }
+}
@@ -0,0 +1,50 @@
+package com.littletomato.warehouse;
+
+import com.mojang.serialization.MapCodec;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.LivingEntity;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.BaseEntityBlock;
+import net.minecraft.world.level.block.RenderShape;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * 仓库接口方块：放置时绑定放置者当前选择的仓库，之后漏斗和管道可以通过它存取该仓库（仅在放置者仍有权访问时）
+ */
+public class WarehouseInterfaceBlock extends BaseEntityBlock {
+
+    public static final MapCodec<WarehouseInterfaceBlock> CODEC = simpleCodec(WarehouseInterfaceBlock::new);
+
+    public WarehouseInterfaceBlock(Properties properties) {
+        super(properties);
+    }
+
+    @Override
+    protected MapCodec<? extends BaseEntityBlock> codec() {
+        return CODEC;
+    }
+
+    @Override
+    public BlockEntity newBlockEntity(BlockPos pos, BlockState state) {
+        return new WarehouseInterfaceBlockEntity(pos, state);
+    }
+
+    @Override
+    protected RenderShape getRenderShape(BlockState state) {
+        return RenderShape.MODEL;
+    }
+
+    @Override
+    public void setPlacedBy(Level level, BlockPos pos, BlockState state, LivingEntity placer,
+                            ItemStack stack) {
+        super.setPlacedBy(level, pos, state, placer, stack);
+        if (placer instanceof ServerPlayer player
+                && level.getBlockEntity(pos) instanceof WarehouseInterfaceBlockEntity entity) {
+            entity.setOwner(player);
+            entity.setWarehouseId(WarehouseRegistry.getSelectedId(player));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.littletomato.warehouse;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.UUIDUtil;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.storage.ValueInput;
+import net.minecraft.world.level.storage.ValueOutput;
+
+import java.util.UUID;
+
+/**
+ * 仓库接口方块实体：记录放置者当时选择的仓库，向相邻的漏斗和管道暴露该仓库。
+ * 放置者失去该仓库的访问权限后（如离开队伍）接口不再提供存储，其他玩家无法借它存取别人的私人仓库。
+ */
+public class WarehouseInterfaceBlockEntity extends BlockEntity {
+
+    private String warehouseId = WarehouseRegistry.GLOBAL;
+    // 放置者，null 表示未知（只允许连接全局仓库）
+    private UUID owner = null;
+    private String ownerName = "";
+
+    public WarehouseInterfaceBlockEntity(BlockPos pos, BlockState state) {
+        super(WarehouseBlocks.WAREHOUSE_INTERFACE_ENTITY, pos, state);
+    }
+
+    public String getWarehouseId() {
+        return warehouseId;
+    }
+
+    public void setWarehouseId(String warehouseId) {
+        this.warehouseId = warehouseId;
+        setChanged();
+    }
+
+    public void setOwner(ServerPlayer player) {
+        this.owner = player.getUUID();
+        this.ownerName = player.getScoreboardName();
+        setChanged();
+    }
+
+    /**
+     * 该接口连接的仓库；客户端上或放置者已无权访问该仓库时返回 null
+     */
+    public WarehouseTransferStorage getStorage() {
+        if (!(level instanceof ServerLevel serverLevel)) return null;
+        if (!warehouseId.equals(WarehouseRegistry.GLOBAL) && (owner == null
+                || !WarehouseRegistry.canAccess(serverLevel.getServer(), owner, ownerName, warehouseId))) {
+            return null;
+        }
+        return WarehouseTransferStorage.get(serverLevel.getServer(), warehouseId);
+    }
+
+    @Override
+    protected void saveAdditional(ValueOutput output) {
+        super.saveAdditional(output);
+        output.putString("warehouse", warehouseId);
+        if (owner != null) {
+            output.store("owner", UUIDUtil.CODEC, owner);
+            output.putString("owner_name", ownerName);
+        }
+    }
+
+    @Override
+    protected void loadAdditional(ValueInput input) {
+        super.loadAdditional(input);
+        warehouseId = input.getStringOr("warehouse", WarehouseRegistry.GLOBAL);
+        owner = input.read("owner", UUIDUtil.CODEC).orElse(null);
+        ownerName = input.getStringOr("owner_name", "");
+    }
+}
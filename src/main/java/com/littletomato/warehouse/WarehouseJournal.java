@@ -0,0 +1,314 @@
+package com.littletomato.warehouse;
+
+import com.littletomato.LittleTomato;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.resources.Identifier;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.level.storage.LevelResource;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 仓库预写日志：每次库存变化都记录 (仓库 ID, revision, 物品 ID, 变化后的数量)，同一 tick 内的记录合并成一帧，
+ * 在 tick 结束时交给后台线程追加写入（组提交）。崩溃后重启时，在最近一次保存的 cloud_warehouse_state
+ * 之上重放比其版本新的记录。记录的是绝对数量，重复重放同一条记录不会出错。
+ * <p>
+ * 文件格式：魔数(int) + 版本(byte)，之后是若干帧，每帧为 长度(int) + CRC32(int) + 正文，
+ * 正文为 记录数(varint)，每条记录为 仓库 ID(utf) + revision(varlong) + 物品 ID(utf) + 数量(varlong)。
+ * 写到一半的帧（长度不足或校验失败）在重放时被忽略。
+ * <p>
+ * 每次世界保存后轮换日志：当前文件改名为 .old，新记录写入新文件。.old 保留到下一次保存，
+ * 以防上一次保存的数据尚未真正落盘。除后台写入外，所有方法都在服务端主线程调用。
+ */
+public class WarehouseJournal {
+
+    public enum FsyncPolicy {
+        // 每次组提交后都 fsync
+        ALWAYS,
+        // 距上次 fsync 超过 journal.fsyncIntervalMillis 时才 fsync
+        INTERVAL,
+        // 交给操作系统决定何时落盘
+        NEVER
+    }
+
+    private static final int MAGIC = 0x4C54574A; // "LTWJ"
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 5;
+    // 单帧正文的上限，超过视为损坏
+    private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private static final String FILE_NAME = "cloud_warehouse_state.journal";
+    private static final String OLD_SUFFIX = ".old";
+
+    private static ExecutorService writer = null;
+    private static Path journalPath = null;
+
+    // 仅由写入线程访问
+    private static FileChannel channel = null;
+    private static long lastFsyncMillis = 0;
+
+    // 本 tick 尚未提交的记录，仅由主线程访问
+    private static FriendlyByteBuf pending = null;
+    private static int pendingCount = 0;
+
+    /**
+     * 服务器启动后调用：把日志重放到各仓库上，然后开始记录新的变化
+     */
+    public static void open(MinecraftServer server) {
+        close();
+
+        Path dir = server.getWorldPath(LevelResource.ROOT).resolve("data");
+        journalPath = dir.resolve(FILE_NAME);
+        Path oldPath = dir.resolve(FILE_NAME + OLD_SUFFIX);
+
+        int replayed = replay(oldPath, server) + replay(journalPath, server);
+        if (replayed > 0) {
+            LittleTomato.LOGGER.info("Replayed {} warehouse journal records", replayed);
+        }
+
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Warehouse-Journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Path path = journalPath;
+        writer.execute(() -> openChannel(path));
+    }
+
+    /**
+     * 记录一次库存变化，在 tick 结束时统一提交
+     */
+    public static void record(String warehouseId, long revision, Item item, long count) {
+        if (writer == null) return;
+        if (pending == null) {
+            pending = new FriendlyByteBuf(Unpooled.buffer(256));
+        }
+        pending.writeUtf(warehouseId);
+        pending.writeVarLong(revision);
+        pending.writeUtf(BuiltInRegistries.ITEM.getKey(item).toString());
+        pending.writeVarLong(count);
+        pendingCount++;
+    }
+
+    /**
+     * 把本 tick 的记录合并成一帧交给写入线程
+     */
+    public static void flush() {
+        if (writer == null || pendingCount == 0) return;
+
+        long start = System.nanoTime();
+        FriendlyByteBuf body = new FriendlyByteBuf(Unpooled.buffer(pending.readableBytes() + 5));
+        byte[] frame;
+        try {
+            body.writeVarInt(pendingCount);
+            body.writeBytes(pending);
+            frame = ByteBufUtil.getBytes(body);
+        } finally {
+            body.release();
+            pending.release();
+            pending = null;
+            pendingCount = 0;
+        }
+
+        writer.execute(() -> writeFrame(frame));
+        WarehouseMetrics.record(WarehouseMetrics.Timer.JOURNAL_FLUSH, start);
+    }
+
+    /**
+     * 世界保存完成后调用：此前的记录都已包含在保存的数据中，轮换到新的日志文件
+     */
+    public static void onSaved() {
+        if (writer == null) return;
+        flush();
+        Path path = journalPath;
+        writer.execute(() -> rotate(path));
+    }
+
+    /**
+     * 服务器停止时调用：提交剩余记录并等待写入完成
+     */
+    public static void close() {
+        if (writer == null) return;
+        flush();
+        writer.execute(WarehouseJournal::closeChannel);
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                LittleTomato.LOGGER.warn("Timed out waiting for warehouse journal writes");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+        journalPath = null;
+    }
+
+    // --- 以下方法在写入线程执行 ---
+
+    private static void openChannel(Path path) {
+        try {
+            Files.createDirectories(path.getParent());
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).put(VERSION).flip();
+                writeFully(header);
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            LittleTomato.LOGGER.error("Failed to open warehouse journal {}", path, e);
+            channel = null;
+        }
+    }
+
+    private static void writeFrame(byte[] body) {
+        if (channel == null) return;
+
+        long start = System.nanoTime();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + body.length);
+        buffer.putInt(body.length).putInt((int) crc.getValue()).put(body).flip();
+
+        try {
+            writeFully(buffer);
+            long now = System.currentTimeMillis();
+            boolean sync = switch (WarehouseConfig.journalFsync) {
+                case ALWAYS -> true;
+                case INTERVAL -> now - lastFsyncMillis >= WarehouseConfig.journalFsyncIntervalMillis;
+                case NEVER -> false;
+            };
+            if (sync) {
+                channel.force(false);
+                lastFsyncMillis = now;
+            }
+            WarehouseMetrics.count(WarehouseMetrics.Counter.JOURNAL_BYTES, buffer.capacity());
+            WarehouseMetrics.record(WarehouseMetrics.Timer.JOURNAL_WRITE, start);
+        } catch (IOException e) {
+            LittleTomato.LOGGER.error("Failed to write warehouse journal", e);
+        }
+    }
+
+    private static void rotate(Path path) {
+        closeChannel();
+        try {
+            if (Files.exists(path)) {
+                Files.move(path, path.resolveSibling(FILE_NAME + OLD_SUFFIX), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            LittleTomato.LOGGER.error("Failed to rotate warehouse journal", e);
+        }
+        openChannel(path);
+    }
+
+    private static void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            LittleTomato.LOGGER.warn("Failed to close warehouse journal", e);
+        }
+        channel = null;
+    }
+
+    private static void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // --- 重放 ---
+
+    /**
+     * @return 实际应用的记录数
+     */
+    private static int replay(Path path, MinecraftServer server) {
+        if (!Files.exists(path)) return 0;
+
+        int applied = 0;
+        try (InputStream in = Files.newInputStream(path);
+             DataInputStream data = new DataInputStream(in)) {
+            if (data.readInt() != MAGIC || data.readByte() != VERSION) {
+                LittleTomato.LOGGER.warn("Ignoring warehouse journal {} with unknown header", path);
+                return 0;
+            }
+
+            while (true) {
+                int length;
+                try {
+                    length = data.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 0 || length > MAX_FRAME_SIZE) {
+                    LittleTomato.LOGGER.warn("Corrupted frame in warehouse journal {}, stopping replay", path);
+                    break;
+                }
+
+                byte[] body = new byte[length];
+                int expectedCrc;
+                try {
+                    expectedCrc = data.readInt();
+                    data.readFully(body);
+                } catch (EOFException e) {
+                    // 崩溃时写到一半的最后一帧
+                    break;
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                if ((int) crc.getValue() != expectedCrc) {
+                    LittleTomato.LOGGER.warn("Checksum mismatch in warehouse journal {}, stopping replay", path);
+                    break;
+                }
+                applied += applyFrame(body, server);
+            }
+        } catch (IOException e) {
+            LittleTomato.LOGGER.error("Failed to read warehouse journal {}", path, e);
+        }
+        return applied;
+    }
+
+    private static int applyFrame(byte[] body, MinecraftServer server) {
+        FriendlyByteBuf buf = new FriendlyByteBuf(Unpooled.wrappedBuffer(body));
+        int count = buf.readVarInt();
+        int applied = 0;
+        for (int i = 0; i < count; i++) {
+            String warehouseId = buf.readUtf();
+            long revision = buf.readVarLong();
+            String id = buf.readUtf();
+            long amount = buf.readVarLong();
+
+            Identifier key = Identifier.tryParse(id);
+            Item item = key == null ? null : BuiltInRegistries.ITEM.getOptional(key).orElse(null);
+            if (item == null) {
+                LittleTomato.LOGGER.warn("Skipping journal record for unknown item {}", id);
+                continue;
+            }
+            if (WarehouseRegistry.get(server, warehouseId).replay(revision, item, amount)) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+}
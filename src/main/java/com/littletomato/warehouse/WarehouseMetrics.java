@@ -0,0 +1,226 @@
+package com.littletomato.warehouse;
+
+import com.littletomato.LittleTomato;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 仓库运行指标：计数器和耗时直方图，用 /wh stats 查看。
+ * <p>
+ * 主线程上计时的部分同时累加到本 tick 的仓库总耗时中，每 tick 结束时记入 TICK 直方图，
+ * 并在 JFR 正在录制时提交一个事件，便于与服务器的 tick 尖峰对照。
+ * 后台线程（备份、日志写入）也会记录指标，因此所有计数都是线程安全的。
+ */
+public class WarehouseMetrics {
+
+    public enum Counter {
+        PACKETS_RECEIVED("packets received"),
+        OPS_EXECUTED("operations executed"),
+        OPS_REJECTED("operations rejected"),
+        STOCK_CHANGES("stock changes"),
+        BROADCASTS("broadcast requests"),
+        PLAYERS_NOTIFIED("players notified"),
+        PACKETS_SENT("packets sent"),
+        JOURNAL_BYTES("journal bytes"),
+        BACKUP_BYTES("backup bytes"),
+        TRANSFER_COMMITS("transfer commits"),
+        PORT_ITEMS_MOVED("port items moved");
+
+        private final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+    }
+
+    public enum Timer {
+        // 单个玩家操作（调度器中执行一个请求）
+        OPERATION("operation", true),
+        SYNC_FLUSH("sync flush", true),
+        JOURNAL_FLUSH("journal flush", true),
+        STORAGE_SAVE("storage save", true),
+        PORTS("ports", true),
+        JOURNAL_WRITE("journal write", false),
+        BACKUP_WRITE("backup write", false),
+        // 每 tick 仓库在主线程上的总耗时，由 onEndTick 记录
+        TICK("tick total", false);
+
+        private final String label;
+        private final boolean countsTowardTick;
+
+        Timer(String label, boolean countsTowardTick) {
+            this.label = label;
+            this.countsTowardTick = countsTowardTick;
+        }
+    }
+
+    /**
+     * 按 2 的幂分桶的耗时直方图，分位数取所在桶的上界
+     */
+    private static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(nanos, 1)) - 1);
+            count.incrementAndGet();
+            sum.addAndGet(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        long percentile(double p) {
+            long total = count.get();
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(total * p);
+            long seen = 0;
+            for (int i = 0; i < 64; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return Math.min(1L << (i + 1), max.get());
+            }
+            return max.get();
+        }
+    }
+
+    @Name("littletomato.WarehouseTick")
+    @Label("Warehouse Tick")
+    @Category("Little Tomato")
+    @Description("Main thread time spent by the warehouse in one server tick")
+    static class TickEvent extends Event {
+        @Label("Warehouse Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long warehouseNanos;
+        @Label("Operations")
+        long operations;
+        @Label("Players Notified")
+        long playersNotified;
+    }
+
+    private static final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private static final Histogram[] timers = new Histogram[Timer.values().length];
+    // 各类 C2S 数据包的接收次数
+    private static final Map<String, LongAdder> received = new ConcurrentHashMap<>();
+
+    private static long resetMillis = System.currentTimeMillis();
+    // 本 tick 内的累计值，只在主线程访问
+    private static long tickNanos = 0;
+    private static long tickOperations = 0;
+    private static long tickPlayersNotified = 0;
+    private static int ticksSinceLog = 0;
+
+    static {
+        for (int i = 0; i < counters.length; i++) counters[i] = new LongAdder();
+        for (int i = 0; i < timers.length; i++) timers[i] = new Histogram();
+    }
+
+    public static void count(Counter counter) {
+        count(counter, 1);
+    }
+
+    public static void count(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+        if (counter == Counter.OPS_EXECUTED) tickOperations += amount;
+        if (counter == Counter.PLAYERS_NOTIFIED) tickPlayersNotified += amount;
+    }
+
+    /**
+     * 记录一次耗时，startNanos 为 System.nanoTime() 的起点
+     */
+    public static void record(Timer timer, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        timers[timer.ordinal()].record(nanos);
+        if (timer.countsTowardTick) {
+            tickNanos += nanos;
+        }
+    }
+
+    public static void onReceived(CustomPacketPayload payload) {
+        received.computeIfAbsent(payload.type().id().getPath(), key -> new LongAdder()).increment();
+        count(Counter.PACKETS_RECEIVED);
+    }
+
+    /**
+     * 每个服务端 tick 结束时调用（在其他仓库逻辑之后）
+     */
+    public static void onEndTick() {
+        timers[Timer.TICK.ordinal()].record(tickNanos);
+
+        TickEvent event = new TickEvent();
+        if (tickNanos > 0 && event.shouldCommit()) {
+            event.warehouseNanos = tickNanos;
+            event.operations = tickOperations;
+            event.playersNotified = tickPlayersNotified;
+            event.commit();
+        }
+        tickNanos = 0;
+        tickOperations = 0;
+        tickPlayersNotified = 0;
+
+        if (WarehouseConfig.metricsLogIntervalSeconds > 0
+                && ++ticksSinceLog >= WarehouseConfig.metricsLogIntervalSeconds * 20) {
+            ticksSinceLog = 0;
+            Histogram tick = timers[Timer.TICK.ordinal()];
+            LittleTomato.LOGGER.info("Warehouse: {} ops, {} stock changes, {} players notified, tick p99 {} max {}",
+                    get(Counter.OPS_EXECUTED), get(Counter.STOCK_CHANGES), get(Counter.PLAYERS_NOTIFIED),
+                    formatNanos(tick.percentile(0.99)), formatNanos(tick.max.get()));
+        }
+    }
+
+    public static long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    public static double getSecondsSinceReset() {
+        return Math.max(1, System.currentTimeMillis() - resetMillis) / 1000.0;
+    }
+
+    public static String formatCounter(Counter counter) {
+        long value = get(counter);
+        return String.format(Locale.ROOT, "%s: %d (%.1f/s)", counter.label, value, value / getSecondsSinceReset());
+    }
+
+    public static String formatTimer(Timer timer) {
+        Histogram histogram = timers[timer.ordinal()];
+        long count = histogram.count.get();
+        long mean = count == 0 ? 0 : histogram.sum.get() / count;
+        return String.format(Locale.ROOT, "%s: %d, mean %s, p50 %s, p99 %s, max %s", timer.label, count,
+                formatNanos(mean), formatNanos(histogram.percentile(0.5)), formatNanos(histogram.percentile(0.99)),
+                formatNanos(histogram.max.get()));
+    }
+
+    /**
+     * 各类数据包的接收次数，按名称排序
+     */
+    public static Map<String, Long> getReceived() {
+        Map<String, Long> result = new TreeMap<>();
+        received.forEach((name, adder) -> result.put(name, adder.sum()));
+        return result;
+    }
+
+    public static void reset() {
+        for (LongAdder counter : counters) counter.reset();
+        for (int i = 0; i < timers.length; i++) timers[i] = new Histogram();
+        received.clear();
+        resetMillis = System.currentTimeMillis();
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000) return nanos + "ns";
+        if (nanos < 1_000_000) return String.format(Locale.ROOT, "%.1fus", nanos / 1_000.0);
+        return String.format(Locale.ROOT, "%.2fms", nanos / 1_000_000.0);
+    }
+}
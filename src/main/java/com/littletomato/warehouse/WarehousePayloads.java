@@ -10,22 +10,19 @@ import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
 import net.minecraft.resources.Identifier;
 import net.minecraft.world.item.Item;
 
-import java.util.Map;
+import java.util.List;
 
 public class WarehousePayloads {
 
-    // 服务端同步数据到客户端
-    public record WarehouseDataS2CPayload(Map<Item, Integer> items, long lastUpdated) implements CustomPacketPayload {
-        public static final Type<WarehouseDataS2CPayload> ID =
-                new Type<>(Identifier.fromNamespaceAndPath(LittleTomato.MOD_ID, "warehouse_data"));
-
-        // 使用 ByteBufCodecs.map 构建复杂的 StreamCodec
-        public static final StreamCodec<RegistryFriendlyByteBuf, WarehouseDataS2CPayload> CODEC = StreamCodec.composite(
-                ByteBufCodecs.map(java.util.HashMap::new, ByteBufCodecs.registry(Registries.ITEM), ByteBufCodecs.INT),
-                WarehouseDataS2CPayload::items,
-                ByteBufCodecs.VAR_LONG,
-                WarehouseDataS2CPayload::lastUpdated,
-                WarehouseDataS2CPayload::new
+    private static final StreamCodec<RegistryFriendlyByteBuf, Item> ITEM_CODEC = ByteBufCodecs.registry(Registries.ITEM);
+
+    // 玩家的操作队列已满：客户端应在 retryAfterTicks 之后再发送新的操作
+    public record SlowDownS2CPayload(int retryAfterTicks) implements CustomPacketPayload {
+        public static final Type<SlowDownS2CPayload> ID =
+                new Type<>(Identifier.fromNamespaceAndPath(LittleTomato.MOD_ID, "slow_down"));
+        public static final StreamCodec<RegistryFriendlyByteBuf, SlowDownS2CPayload> CODEC = StreamCodec.composite(
+                ByteBufCodecs.VAR_INT, SlowDownS2CPayload::retryAfterTicks,
+                SlowDownS2CPayload::new
         );
 
         @Override
@@ -34,12 +31,67 @@ public class WarehousePayloads {
         }
     }
 
-    // 客户端请求数据
-    public record RequestWarehouseDataC2SPayload() implements CustomPacketPayload {
-        public static final Type<RequestWarehouseDataC2SPayload> ID =
-                new Type<>(Identifier.fromNamespaceAndPath(LittleTomato.MOD_ID, "request_warehouse_data"));
-        public static final StreamCodec<RegistryFriendlyByteBuf, RequestWarehouseDataC2SPayload> CODEC =
-                StreamCodec.unit(new RequestWarehouseDataC2SPayload());
+    // 分页查询：按 filter 筛选、按 sort 排序后，返回从 offset 开始的最多 limit 条。
+    // 服务端记住每个玩家最近一次查询，仓库变化时重新推送该窗口；requestId 用于客户端丢弃过期的回复
+    public record WarehouseQueryC2SPayload(int requestId, String filter, WarehouseQueryIndex.SortKey sort, int offset,
+                                           int limit) implements CustomPacketPayload {
+        public static final int MAX_FILTER_LENGTH = 256;
+        public static final int MAX_LIMIT = 256;
+
+        public static final Type<WarehouseQueryC2SPayload> ID =
+                new Type<>(Identifier.fromNamespaceAndPath(LittleTomato.MOD_ID, "warehouse_query"));
+        public static final StreamCodec<RegistryFriendlyByteBuf, WarehouseQueryC2SPayload> CODEC = StreamCodec.composite(
+                ByteBufCodecs.VAR_INT, WarehouseQueryC2SPayload::requestId,
+                ByteBufCodecs.stringUtf8(MAX_FILTER_LENGTH), WarehouseQueryC2SPayload::filter,
+                WarehouseQueryIndex.SortKey.STREAM_CODEC, WarehouseQueryC2SPayload::sort,
+                ByteBufCodecs.VAR_INT, WarehouseQueryC2SPayload::offset,
+                ByteBufCodecs.VAR_INT, WarehouseQueryC2SPayload::limit,
+                WarehouseQueryC2SPayload::new
+        );
+
+        @Override
+        public Type<? extends CustomPacketPayload> type() {
+            return ID;
+        }
+    }
+
+    // 分页结果中的一行
+    public record PageEntry(Item item, long count) {
+        public static final StreamCodec<RegistryFriendlyByteBuf, PageEntry> CODEC = StreamCodec.composite(
+                ITEM_CODEC, PageEntry::item,
+                ByteBufCodecs.VAR_LONG, PageEntry::count,
+                PageEntry::new
+        );
+    }
+
+    // 分页查询的回复：total 为符合条件的总条数，entries 为从 offset 开始的窗口
+    public record WarehousePageS2CPayload(int requestId, long revision, long lastUpdated, int total, int offset,
+                                          List<PageEntry> entries) implements CustomPacketPayload {
+        public static final Type<WarehousePageS2CPayload> ID =
+                new Type<>(Identifier.fromNamespaceAndPath(LittleTomato.MOD_ID, "warehouse_page"));
+        public static final StreamCodec<RegistryFriendlyByteBuf, WarehousePageS2CPayload> CODEC = StreamCodec.composite(
+                ByteBufCodecs.VAR_INT, WarehousePageS2CPayload::requestId,
+                ByteBufCodecs.VAR_LONG, WarehousePageS2CPayload::revision,
+                ByteBufCodecs.VAR_LONG, WarehousePageS2CPayload::lastUpdated,
+                ByteBufCodecs.VAR_INT, WarehousePageS2CPayload::total,
+                ByteBufCodecs.VAR_INT, WarehousePageS2CPayload::offset,
+                PageEntry.CODEC.apply(ByteBufCodecs.list(WarehouseQueryC2SPayload.MAX_LIMIT)),
+                WarehousePageS2CPayload::entries,
+                WarehousePageS2CPayload::new
+        );
+
+        @Override
+        public Type<? extends CustomPacketPayload> type() {
+            return ID;
+        }
+    }
+
+    // 客户端关闭仓库界面，取消订阅
+    public record CloseWarehouseC2SPayload() implements CustomPacketPayload {
+        public static final Type<CloseWarehouseC2SPayload> ID =
+                new Type<>(Identifier.fromNamespaceAndPath(LittleTomato.MOD_ID, "close_warehouse"));
+        public static final StreamCodec<RegistryFriendlyByteBuf, CloseWarehouseC2SPayload> CODEC =
+                StreamCodec.unit(new CloseWarehouseC2SPayload());
 
         @Override
         public Type<? extends CustomPacketPayload> type() {
@@ -77,6 +129,49 @@ public class WarehousePayloads {
         }
     }
 
+    // 批量操作中的一项：deposit 为 true 时从 slotId 槽位存入，否则取出 item
+    public record BatchEntry(boolean deposit, int slotId, Item item, int count) {
+        public static final StreamCodec<RegistryFriendlyByteBuf, BatchEntry> CODEC = StreamCodec.of(
+                (buf, entry) -> {
+                    buf.writeBoolean(entry.deposit());
+                    if (entry.deposit()) {
+                        buf.writeVarInt(entry.slotId());
+                    } else {
+                        ITEM_CODEC.encode(buf, entry.item());
+                    }
+                    buf.writeVarInt(entry.count());
+                },
+                buf -> buf.readBoolean()
+                        ? deposit(buf.readVarInt(), buf.readVarInt())
+                        : withdraw(ITEM_CODEC.decode(buf), buf.readVarInt())
+        );
+
+        public static BatchEntry deposit(int slotId, int count) {
+            return new BatchEntry(true, slotId, null, count);
+        }
+
+        public static BatchEntry withdraw(Item item, int count) {
+            return new BatchEntry(false, -1, item, count);
+        }
+    }
+
+    // 批量存取，服务端整批原子执行
+    public record BatchTransferC2SPayload(List<BatchEntry> entries) implements CustomPacketPayload {
+        public static final int MAX_ENTRIES = 256;
+
+        public static final Type<BatchTransferC2SPayload> ID =
+                new Type<>(Identifier.fromNamespaceAndPath(LittleTomato.MOD_ID, "batch_transfer"));
+        public static final StreamCodec<RegistryFriendlyByteBuf, BatchTransferC2SPayload> CODEC = StreamCodec.composite(
+                BatchEntry.CODEC.apply(ByteBufCodecs.list(MAX_ENTRIES)), BatchTransferC2SPayload::entries,
+                BatchTransferC2SPayload::new
+        );
+
+        @Override
+        public Type<? extends CustomPacketPayload> type() {
+            return ID;
+        }
+    }
+
     // 取出指定物品
     public record WithdrawItemC2SPayload(Item item, int count) implements CustomPacketPayload {
         public static final Type<WithdrawItemC2SPayload> ID =
@@ -0,0 +1,123 @@
+package com.littletomato.warehouse;
+
+import com.mojang.serialization.MapCodec;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.InteractionHand;
+import net.minecraft.world.InteractionResult;
+import net.minecraft.world.entity.LivingEntity;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.context.BlockPlaceContext;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.BaseEntityBlock;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.RenderShape;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.block.state.StateDefinition;
+import net.minecraft.world.level.block.state.properties.BlockStateProperties;
+import net.minecraft.world.level.block.state.properties.EnumProperty;
+import net.minecraft.world.level.redstone.Orientation;
+import net.minecraft.world.phys.BlockHitResult;
+
+/**
+ * 仓库端口方块：正面朝向要存取的容器，放置时绑定放置者当前选择的仓库。
+ * 手持物品右键设置过滤物品，空手右键切换推送/拉取，潜行空手右键清除过滤；只有能访问该仓库的玩家可以修改设置。
+ */
+public class WarehousePortBlock extends BaseEntityBlock {
+
+    public static final MapCodec<WarehousePortBlock> CODEC = simpleCodec(WarehousePortBlock::new);
+    public static final EnumProperty<Direction> FACING = BlockStateProperties.FACING;
+
+    public WarehousePortBlock(Properties properties) {
+        super(properties);
+        registerDefaultState(stateDefinition.any().setValue(FACING, Direction.NORTH));
+    }
+
+    @Override
+    protected MapCodec<? extends BaseEntityBlock> codec() {
+        return CODEC;
+    }
+
+    @Override
+    protected void createBlockStateDefinition(StateDefinition.Builder<Block, BlockState> builder) {
+        builder.add(FACING);
+    }
+
+    @Override
+    public BlockState getStateForPlacement(BlockPlaceContext context) {
+        // 朝向被点击的方块
+        return defaultBlockState().setValue(FACING, context.getClickedFace().getOpposite());
+    }
+
+    @Override
+    public BlockEntity newBlockEntity(BlockPos pos, BlockState state) {
+        return new WarehousePortBlockEntity(pos, state);
+    }
+
+    @Override
+    protected RenderShape getRenderShape(BlockState state) {
+        return RenderShape.MODEL;
+    }
+
+    @Override
+    public void setPlacedBy(Level level, BlockPos pos, BlockState state, LivingEntity placer, ItemStack stack) {
+        super.setPlacedBy(level, pos, state, placer, stack);
+        if (placer instanceof ServerPlayer player
+                && level.getBlockEntity(pos) instanceof WarehousePortBlockEntity port) {
+            port.setOwner(player);
+            port.setWarehouseId(WarehouseRegistry.getSelectedId(player));
+        }
+    }
+
+    @Override
+    protected InteractionResult useItemOn(ItemStack stack, BlockState state, Level level, BlockPos pos, Player player,
+                                          InteractionHand hand, BlockHitResult hitResult) {
+        if (stack.isEmpty()) return InteractionResult.TRY_WITH_EMPTY_HAND;
+        if (!(player instanceof ServerPlayer serverPlayer)) return InteractionResult.SUCCESS;
+        if (!(level.getBlockEntity(pos) instanceof WarehousePortBlockEntity port)) return InteractionResult.PASS;
+        if (!checkAccess(serverPlayer, port)) return InteractionResult.FAIL;
+
+        port.setFilter(stack.getItem());
+        serverPlayer.sendSystemMessage(Component.literal("Port filter: ").append(stack.getItem().getName()), true);
+        return InteractionResult.SUCCESS;
+    }
+
+    @Override
+    protected InteractionResult useWithoutItem(BlockState state, Level level, BlockPos pos, Player player,
+                                               BlockHitResult hitResult) {
+        if (!(player instanceof ServerPlayer serverPlayer)) return InteractionResult.SUCCESS;
+        if (!(level.getBlockEntity(pos) instanceof WarehousePortBlockEntity port)) return InteractionResult.PASS;
+        if (!checkAccess(serverPlayer, port)) return InteractionResult.FAIL;
+
+        if (player.isShiftKeyDown()) {
+            port.setFilter(null);
+            serverPlayer.sendSystemMessage(Component.literal("Port filter cleared"), true);
+        } else {
+            port.setPush(!port.isPush());
+            serverPlayer.sendSystemMessage(Component.literal(port.isPush()
+                    ? "Port mode: warehouse -> container" : "Port mode: container -> warehouse"), true);
+        }
+        return InteractionResult.SUCCESS;
+    }
+
+    private static boolean checkAccess(ServerPlayer player, WarehousePortBlockEntity port) {
+        if (WarehouseRegistry.canAccess(player, port.getWarehouseId())) return true;
+        player.sendSystemMessage(Component.literal("You cannot configure a port of the "
+                + WarehouseRegistry.getDisplayName(player.level().getServer(), port.getWarehouseId()) + " warehouse"), true);
+        return false;
+    }
+
+    @Override
+    protected void neighborChanged(BlockState state, Level level, BlockPos pos, Block neighborBlock,
+                                   Orientation orientation, boolean movedByPiston) {
+        super.neighborChanged(state, level, pos, neighborBlock, orientation, movedByPiston);
+        // 正面的容器可能被放置或替换
+        if (level.getBlockEntity(pos) instanceof WarehousePortBlockEntity port) {
+            WarehousePorts.wake(port);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.littletomato.warehouse;
+
+import net.fabricmc.fabric.api.lookup.v1.block.BlockApiCache;
+import net.fabricmc.fabric.api.transfer.v1.item.ItemStorage;
+import net.fabricmc.fabric.api.transfer.v1.item.ItemVariant;
+import net.fabricmc.fabric.api.transfer.v1.storage.Storage;
+import net.fabricmc.fabric.api.transfer.v1.storage.StorageUtil;
+import net.fabricmc.fabric.api.transfer.v1.transaction.Transaction;
+import net.fabricmc.fabric.api.transfer.v1.transaction.TransactionContext;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.core.UUIDUtil;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.storage.ValueInput;
+import net.minecraft.world.level.storage.ValueOutput;
+
+import java.util.UUID;
+
+/**
+ * 仓库端口方块实体：按过滤物品把仓库库存推送到正面的容器，或从正面的容器拉取到仓库。
+ * 端口本身不 tick，由 {@link WarehousePorts} 按关卡统一调度。放置者失去所绑定仓库的访问权限后端口停止工作。
+ */
+public class WarehousePortBlockEntity extends BlockEntity {
+
+    private String warehouseId = WarehouseRegistry.GLOBAL;
+    // 放置者，null 表示未知（只允许连接全局仓库）
+    private UUID owner = null;
+    private String ownerName = "";
+    // 过滤物品，null 表示不过滤
+    private Item filter = null;
+    // true：仓库 -> 容器；false：容器 -> 仓库
+    private boolean push = true;
+
+    // --- 以下为 WarehousePorts 使用的调度状态，不持久化 ---
+    boolean awake = false;
+    // 每次休眠或唤醒时递增，用于识别过期的定时唤醒
+    int generation = 0;
+    long nextRunTick = 0;
+    // 当前的空闲退避时长（tick），有物品移动时归零
+    int idleTicks = 0;
+    // 是否登记在仓库变化的等待名单中
+    boolean waiting = false;
+    private BlockApiCache<Storage<ItemVariant>, Direction> targetCache;
+
+    public WarehousePortBlockEntity(BlockPos pos, BlockState state) {
+        super(WarehouseBlocks.WAREHOUSE_PORT_ENTITY, pos, state);
+    }
+
+    public String getWarehouseId() {
+        return warehouseId;
+    }
+
+    public Item getFilter() {
+        return filter;
+    }
+
+    public boolean isPush() {
+        return push;
+    }
+
+    public void setOwner(ServerPlayer player) {
+        this.owner = player.getUUID();
+        this.ownerName = player.getScoreboardName();
+        setChanged();
+    }
+
+    /**
+     * 放置者是否仍有权访问端口绑定的仓库
+     */
+    boolean isOwnerAllowed(ServerLevel level) {
+        if (warehouseId.equals(WarehouseRegistry.GLOBAL)) return true;
+        return owner != null && WarehouseRegistry.canAccess(level.getServer(), owner, ownerName, warehouseId);
+    }
+
+    public void setWarehouseId(String warehouseId) {
+        WarehousePorts.unregisterWaiting(this);
+        this.warehouseId = warehouseId;
+        onConfigChanged();
+    }
+
+    public void setFilter(Item filter) {
+        WarehousePorts.unregisterWaiting(this);
+        this.filter = filter;
+        onConfigChanged();
+    }
+
+    public void setPush(boolean push) {
+        WarehousePorts.unregisterWaiting(this);
+        this.push = push;
+        onConfigChanged();
+    }
+
+    private void onConfigChanged() {
+        setChanged();
+        // 配置变化后立即重新尝试
+        idleTicks = 0;
+        WarehousePorts.wake(this);
+    }
+
+    /**
+     * 在给定事务中执行一次传输
+     *
+     * @return 移动的物品数，0 表示端口当前无事可做
+     */
+    long transfer(Storage<ItemVariant> warehouse, TransactionContext transaction) {
+        if (!(level instanceof ServerLevel serverLevel) || !isOwnerAllowed(serverLevel)) return 0;
+
+        Direction facing = getBlockState().getValue(WarehousePortBlock.FACING);
+        if (targetCache == null) {
+            targetCache = BlockApiCache.create(ItemStorage.SIDED, serverLevel, worldPosition.relative(facing));
+        }
+        Storage<ItemVariant> target = targetCache.find(facing.getOpposite());
+        if (target == null) return 0;
+
+        Storage<ItemVariant> from = push ? warehouse : target;
+        Storage<ItemVariant> to = push ? target : warehouse;
+        long max = WarehouseConfig.portItemsPerTransfer;
+        if (filter == null) {
+            // 遍历整个仓库，代价较高；这类端口空闲时只按退避定时重试，不随仓库变化唤醒
+            return StorageUtil.move(from, to, variant -> true, max, transaction);
+        }
+        // 指定了物品时直接按物品存取，不遍历整个仓库
+        return moveOne(from, to, ItemVariant.of(filter), max, transaction);
+    }
+
+    private static long moveOne(Storage<ItemVariant> from, Storage<ItemVariant> to, ItemVariant resource, long max,
+                                TransactionContext transaction) {
+        long accepted = StorageUtil.simulateInsert(to, resource, max, transaction);
+        if (accepted == 0) return 0;
+
+        try (Transaction nested = transaction.openNested()) {
+            long extracted = from.extract(resource, accepted, nested);
+            if (extracted > 0 && to.insert(resource, extracted, nested) == extracted) {
+                nested.commit();
+                return extracted;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    protected void saveAdditional(ValueOutput output) {
+        super.saveAdditional(output);
+        output.putString("warehouse", warehouseId);
+        output.putBoolean("push", push);
+        if (owner != null) {
+            output.store("owner", UUIDUtil.CODEC, owner);
+            output.putString("owner_name", ownerName);
+        }
+        if (filter != null) {
+            output.store("filter", BuiltInRegistries.ITEM.byNameCodec(), filter);
+        }
+    }
+
+    @Override
+    protected void loadAdditional(ValueInput input) {
+        super.loadAdditional(input);
+        warehouseId = input.getStringOr("warehouse", WarehouseRegistry.GLOBAL);
+        push = input.getBooleanOr("push", true);
+        owner = input.read("owner", UUIDUtil.CODEC).orElse(null);
+        ownerName = input.getStringOr("owner_name", "");
+        filter = input.read("filter", BuiltInRegistries.ITEM.byNameCodec()).orElse(null);
+    }
+}
@@ -0,0 +1,177 @@
+package com.littletomato.warehouse;
+
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.fabricmc.fabric.api.transfer.v1.transaction.Transaction;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.entity.BlockEntity;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * 仓库端口调度：每个关卡一个调度器，每 tick 结束时执行到期的端口。
+ * <p>
+ * 同一仓库的到期端口在同一个事务中执行，每 tick 每个仓库只提交一次、只推送一次同步。
+ * 没有移动任何物品的端口进入休眠，按指数退避定时重试（容器一侧的变化没有通知）；
+ * 指定了过滤物品的推送端口同时登记在仓库变化的等待名单中，仓库中该物品数量变化时立即唤醒；
+ * 不过滤的推送端口每次执行都要遍历整个仓库，任何变化都唤醒的代价太高（容器满时会被反复唤醒），只按退避定时重试。
+ * 所有方法都在服务端主线程调用。
+ */
+public class WarehousePorts {
+
+    private static final class LevelPorts {
+        final Set<WarehousePortBlockEntity> awake = new ReferenceLinkedOpenHashSet<>();
+        final PriorityQueue<Sleep> sleeping = new PriorityQueue<>(Comparator.comparingLong(Sleep::wakeTick));
+        long tick = 0;
+    }
+
+    private record Sleep(long wakeTick, WarehousePortBlockEntity port, int generation) {
+    }
+
+    private static final Map<ResourceKey<Level>, LevelPorts> levels = new HashMap<>();
+    // 等待仓库变化的推送端口：仓库 ID -> 过滤物品 -> 端口
+    private static final Map<String, Map<Item, Set<WarehousePortBlockEntity>>> waiting = new HashMap<>();
+
+    public static void onLoad(BlockEntity blockEntity, ServerLevel level) {
+        if (blockEntity instanceof WarehousePortBlockEntity port) {
+            port.awake = false;
+            wake(port);
+        }
+    }
+
+    public static void onUnload(BlockEntity blockEntity, ServerLevel level) {
+        if (!(blockEntity instanceof WarehousePortBlockEntity port)) return;
+        unregisterWaiting(port);
+        port.generation++;
+        port.awake = false;
+        LevelPorts ports = levels.get(level.dimension());
+        if (ports != null) {
+            ports.awake.remove(port);
+        }
+    }
+
+    /**
+     * 唤醒端口，在下一次到期时执行
+     */
+    static void wake(WarehousePortBlockEntity port) {
+        if (port.awake || !(port.getLevel() instanceof ServerLevel level) || port.isRemoved()) return;
+        unregisterWaiting(port);
+        port.awake = true;
+        port.generation++;
+        levels.computeIfAbsent(level.dimension(), key -> new LevelPorts()).awake.add(port);
+    }
+
+    /**
+     * 仓库中某种物品的数量发生了变化，唤醒等待它的推送端口
+     */
+    static void onStockChanged(String warehouseId, Item item) {
+        Map<Item, Set<WarehousePortBlockEntity>> byItem = waiting.get(warehouseId);
+        if (byItem == null) return;
+
+        wakeAll(byItem.remove(item));
+        if (byItem.isEmpty()) {
+            waiting.remove(warehouseId);
+        }
+    }
+
+    private static void wakeAll(Set<WarehousePortBlockEntity> ports) {
+        if (ports == null) return;
+        for (WarehousePortBlockEntity port : ports) {
+            port.waiting = false;
+            wake(port);
+        }
+    }
+
+    static void unregisterWaiting(WarehousePortBlockEntity port) {
+        if (!port.waiting) return;
+        port.waiting = false;
+        Map<Item, Set<WarehousePortBlockEntity>> byItem = waiting.get(port.getWarehouseId());
+        if (byItem == null) return;
+        Set<WarehousePortBlockEntity> ports = byItem.get(port.getFilter());
+        if (ports != null && ports.remove(port) && ports.isEmpty()) {
+            byItem.remove(port.getFilter());
+        }
+    }
+
+    private static void sleep(LevelPorts ports, WarehousePortBlockEntity port) {
+        ports.awake.remove(port);
+        port.awake = false;
+        port.generation++;
+        port.idleTicks = port.idleTicks == 0 ? WarehouseConfig.portTransferIntervalTicks
+                : Math.min(port.idleTicks * 2, WarehouseConfig.portMaxIdleTicks);
+        ports.sleeping.add(new Sleep(ports.tick + port.idleTicks, port, port.generation));
+
+        if (port.isPush() && port.getFilter() != null) {
+            waiting.computeIfAbsent(port.getWarehouseId(), id -> new HashMap<>())
+                    .computeIfAbsent(port.getFilter(), item -> new ReferenceOpenHashSet<>())
+                    .add(port);
+            port.waiting = true;
+        }
+    }
+
+    /**
+     * 每个关卡 tick 结束时调用
+     */
+    public static void onEndTick(ServerLevel level) {
+        LevelPorts ports = levels.get(level.dimension());
+        if (ports == null) return;
+        ports.tick++;
+
+        // 定时唤醒退避到期的端口，跳过已被仓库变化提前唤醒或已卸载的
+        while (!ports.sleeping.isEmpty() && ports.sleeping.peek().wakeTick() <= ports.tick) {
+            Sleep sleep = ports.sleeping.poll();
+            if (sleep.generation() == sleep.port().generation) {
+                wake(sleep.port());
+            }
+        }
+        if (ports.awake.isEmpty()) return;
+
+        long start = System.nanoTime();
+        // 按仓库分组到期的端口
+        Map<String, List<WarehousePortBlockEntity>> due = new LinkedHashMap<>();
+        for (WarehousePortBlockEntity port : ports.awake) {
+            if (port.nextRunTick <= ports.tick) {
+                due.computeIfAbsent(port.getWarehouseId(), id -> new ArrayList<>()).add(port);
+            }
+        }
+
+        for (Map.Entry<String, List<WarehousePortBlockEntity>> group : due.entrySet()) {
+            WarehouseTransferStorage storage = WarehouseTransferStorage.get(level.getServer(), group.getKey());
+            List<WarehousePortBlockEntity> batch = group.getValue();
+            long[] moved = new long[batch.size()];
+            try (Transaction transaction = Transaction.openOuter()) {
+                for (int i = 0; i < batch.size(); i++) {
+                    moved[i] = batch.get(i).transfer(storage, transaction);
+                }
+                transaction.commit();
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                WarehousePortBlockEntity port = batch.get(i);
+                if (moved[i] > 0) {
+                    WarehouseMetrics.count(WarehouseMetrics.Counter.PORT_ITEMS_MOVED, moved[i]);
+                    port.idleTicks = 0;
+                    port.nextRunTick = ports.tick + WarehouseConfig.portTransferIntervalTicks;
+                } else {
+                    sleep(ports, port);
+                }
+            }
+        }
+        WarehouseMetrics.record(WarehouseMetrics.Timer.PORTS, start);
+    }
+
+    public static void reset() {
+        levels.clear();
+        waiting.clear();
+    }
+}
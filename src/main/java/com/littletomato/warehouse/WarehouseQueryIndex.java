@@ -0,0 +1,158 @@
+package com.littletomato.warehouse;
+
+import io.netty.buffer.ByteBuf;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.util.ByIdMap;
+import net.minecraft.world.item.Item;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * 服务端的仓库查询索引：按排序方式缓存排好序的物品列表，按 (排序, 搜索词) 缓存筛选结果，
+ * 客户端只取需要显示的一段窗口。
+ * <p>
+ * 按名称 / ID 排序的列表只在物品种类变化时重建，按数量排序的列表在版本变化时重建；
+ * 搜索词在已缓存的搜索词后追加字符时，只在已缓存的结果中继续筛选。
+ */
+public class WarehouseQueryIndex {
+
+    public enum SortKey {
+        NAME,
+        COUNT,
+        ID;
+
+        private static final IntFunction<SortKey> BY_ID =
+                ByIdMap.continuous(Enum::ordinal, values(), ByIdMap.OutOfBoundsStrategy.ZERO);
+        public static final StreamCodec<ByteBuf, SortKey> STREAM_CODEC = ByteBufCodecs.idMapper(BY_ID, Enum::ordinal);
+    }
+
+    // 一次查询的结果：符合条件的总数，以及从 offset 开始的一段物品
+    public record Window(int total, int offset, List<Item> items) {
+    }
+
+    private record Names(String display, String id, String search) {
+    }
+
+    private record FilterKey(SortKey sort, String filter) {
+    }
+
+    private record Filtered(long stamp, List<Item> items) {
+    }
+
+    private static final int FILTER_CACHE_SIZE = 32;
+
+    private final WarehouseState state;
+
+    // 名称缓存跨版本保留，条目数不超过物品注册表大小
+    private final Reference2ObjectOpenHashMap<Item, Names> names = new Reference2ObjectOpenHashMap<>();
+    private final EnumMap<SortKey, Filtered> sorted = new EnumMap<>(SortKey.class);
+    private final Map<FilterKey, Filtered> filterCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FilterKey, Filtered> eldest) {
+            return size() > FILTER_CACHE_SIZE;
+        }
+    };
+
+    public WarehouseQueryIndex(WarehouseState state) {
+        this.state = state;
+    }
+
+    /**
+     * 查询名称或 ID 包含 filter（忽略大小写）的物品，返回 [offset, offset + limit) 这一段
+     */
+    public Window query(String filter, SortKey sort, int offset, int limit) {
+        List<Item> items = filter(filter, sort);
+        int from = Math.max(0, Math.min(offset, items.size()));
+        int to = Math.min(items.size(), from + Math.max(0, limit));
+        return new Window(items.size(), from, List.copyOf(items.subList(from, to)));
+    }
+
+    /**
+     * 符合 filter 的全部物品，按 sort 排序；返回的列表为缓存，调用方不应修改
+     */
+    public List<Item> filter(String filter, SortKey sort) {
+        String lowerFilter = filter.toLowerCase(Locale.ROOT);
+        List<Item> base = getSorted(sort);
+        if (lowerFilter.isEmpty()) {
+            return base;
+        }
+
+        long stamp = getStamp(sort);
+        Filtered cached = filterCache.get(new FilterKey(sort, lowerFilter));
+        if (cached != null && cached.stamp() == stamp) {
+            return cached.items();
+        }
+
+        // 追加字符的查询结果必然是较短搜索词结果的子集，且保持相同顺序
+        List<Item> source = base;
+        for (int length = lowerFilter.length() - 1; length > 0; length--) {
+            Filtered prefix = filterCache.get(new FilterKey(sort, lowerFilter.substring(0, length)));
+            if (prefix != null && prefix.stamp() == stamp) {
+                source = prefix.items();
+                break;
+            }
+        }
+
+        List<Item> result = new ArrayList<>();
+        for (Item item : source) {
+            if (getNames(item).search().contains(lowerFilter)) {
+                result.add(item);
+            }
+        }
+        filterCache.put(new FilterKey(sort, lowerFilter), new Filtered(stamp, result));
+        return result;
+    }
+
+    private List<Item> getSorted(SortKey sort) {
+        long stamp = getStamp(sort);
+        Filtered cached = sorted.get(sort);
+        if (cached != null && cached.stamp() == stamp) {
+            return cached.items();
+        }
+
+        WarehouseStock stock = state.stock();
+        List<Item> list = new ArrayList<>(stock.size());
+        stock.forEach((item, count) -> list.add(item));
+        list.sort(getComparator(sort));
+
+        sorted.put(sort, new Filtered(stamp, list));
+        return list;
+    }
+
+    /**
+     * 缓存有效性的标记：数量排序依赖每次变更，其余排序只依赖物品种类
+     */
+    private long getStamp(SortKey sort) {
+        return sort == SortKey.COUNT ? state.getRevision() : state.stock().getKeySetVersion();
+    }
+
+    private Comparator<Item> getComparator(SortKey sort) {
+        Comparator<Item> byName = Comparator.comparing((Item item) -> getNames(item).display())
+                .thenComparing(item -> getNames(item).id());
+        return switch (sort) {
+            case NAME -> byName;
+            case ID -> Comparator.comparing(item -> getNames(item).id());
+            case COUNT -> Comparator.comparingLong((Item item) -> state.getStock(item)).reversed()
+                    .thenComparing(byName);
+        };
+    }
+
+    private Names getNames(Item item) {
+        return names.computeIfAbsent(item, k -> {
+            String display = k.getName().getString();
+            String id = BuiltInRegistries.ITEM.getKey(k).toString();
+            // 用换行分隔，避免搜索词跨越名称和 ID 的边界匹配
+            return new Names(display, id, display.toLowerCase(Locale.ROOT) + "\n" + id);
+        });
+    }
+}
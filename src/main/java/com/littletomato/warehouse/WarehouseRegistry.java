@@ -0,0 +1,219 @@
+package com.littletomato.warehouse;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.scores.PlayerTeam;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 仓库注册表：全局仓库、每个玩家的个人仓库、每个记分板队伍的队伍仓库，以及管理员创建的命名仓库。
+ * <p>
+ * 仓库在首次访问时才由存储后端加载，空闲超过 warehouse.idleUnloadMinutes 或已加载数量超过
+ * warehouse.maxLoaded 时按最久未访问的顺序卸载。全局仓库和有人打开着界面的仓库不会被卸载。
+ * 所有方法都在服务端主线程调用。
+ */
+public class WarehouseRegistry {
+
+    public static final String GLOBAL = WarehouseStorage.DEFAULT_WAREHOUSE;
+    private static final String PLAYER_PREFIX = "player:";
+    private static final String TEAM_PREFIX = "team:";
+    private static final String NAMED_PREFIX = "named:";
+
+    // 每隔多少 tick 检查一次是否有仓库需要卸载
+    private static final int EVICT_CHECK_INTERVAL = 100;
+
+    // 已加载的仓库 -> 最近访问的 tick，按访问顺序排列（最久未访问的在前）
+    private static final LinkedHashMap<String, Long> loaded = new LinkedHashMap<>(16, 0.75f, true);
+    // 玩家当前选择的仓库，未选择时使用全局仓库
+    private static final Map<UUID, String> selected = new HashMap<>();
+    private static long tick = 0;
+
+    public static String playerWarehouse(UUID player) {
+        return PLAYER_PREFIX + player;
+    }
+
+    public static String teamWarehouse(String team) {
+        return TEAM_PREFIX + team;
+    }
+
+    public static String namedWarehouse(String name) {
+        return NAMED_PREFIX + name;
+    }
+
+    /**
+     * 仓库在命令参数中的写法：全局仓库为 global，其余把前缀后的 ':' 换成 '.'，如 team.red
+     */
+    public static String toArgument(String warehouseId) {
+        if (warehouseId.equals(GLOBAL)) return "global";
+        return warehouseId.replaceFirst(":", ".");
+    }
+
+    /**
+     * toArgument 的逆变换，不是有效的写法时返回 null
+     */
+    public static String fromArgument(String argument) {
+        if (argument.equals("global")) return GLOBAL;
+        String warehouseId = argument.replaceFirst("\\.", ":");
+        if (warehouseId.startsWith(PLAYER_PREFIX)) {
+            try {
+                UUID.fromString(warehouseId.substring(PLAYER_PREFIX.length()));
+                return warehouseId;
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        if ((warehouseId.startsWith(TEAM_PREFIX) && warehouseId.length() > TEAM_PREFIX.length())
+                || (warehouseId.startsWith(NAMED_PREFIX) && warehouseId.length() > NAMED_PREFIX.length())) {
+            return warehouseId;
+        }
+        return null;
+    }
+
+    /**
+     * 显示给玩家的仓库名称
+     */
+    public static String getDisplayName(MinecraftServer server, String warehouseId) {
+        if (warehouseId.equals(GLOBAL)) return "global";
+        if (warehouseId.startsWith(PLAYER_PREFIX)) {
+            ServerPlayer owner = server.getPlayerList().getPlayer(UUID.fromString(warehouseId.substring(PLAYER_PREFIX.length())));
+            return owner == null ? "personal" : owner.getName().getString() + "'s personal";
+        }
+        if (warehouseId.startsWith(TEAM_PREFIX)) return "team " + warehouseId.substring(TEAM_PREFIX.length());
+        return warehouseId.substring(NAMED_PREFIX.length());
+    }
+
+    /**
+     * 获取仓库，未加载时由存储后端加载
+     */
+    public static WarehouseState get(MinecraftServer server, String warehouseId) {
+        loaded.put(warehouseId, tick);
+        return WarehouseState.getStorage(server).get(warehouseId);
+    }
+
+    /**
+     * 仓库已加载时返回它，否则返回 null（不会触发加载）
+     */
+    public static WarehouseState getIfLoaded(MinecraftServer server, String warehouseId) {
+        return loaded.containsKey(warehouseId) ? get(server, warehouseId) : null;
+    }
+
+    public static boolean canAccess(ServerPlayer player, String warehouseId) {
+        return canAccess(player.level().getServer(), player.getUUID(), player.getScoreboardName(), warehouseId);
+    }
+
+    /**
+     * 按 UUID 和记分板名称判断访问权限，玩家不在线时也可使用（如方块记录的放置者）
+     */
+    public static boolean canAccess(MinecraftServer server, UUID player, String scoreboardName, String warehouseId) {
+        if (warehouseId.equals(GLOBAL)) return true;
+        if (warehouseId.startsWith(PLAYER_PREFIX)) {
+            return warehouseId.equals(playerWarehouse(player));
+        }
+        if (warehouseId.startsWith(TEAM_PREFIX)) {
+            PlayerTeam team = server.getScoreboard().getPlayersTeam(scoreboardName);
+            return team != null && warehouseId.equals(teamWarehouse(team.getName()));
+        }
+        if (warehouseId.startsWith(NAMED_PREFIX)) {
+            return WarehouseRegistryData.get(server).isMember(warehouseId.substring(NAMED_PREFIX.length()), player);
+        }
+        return false;
+    }
+
+    /**
+     * 玩家当前选择的仓库 ID；已失去访问权限（如离开了队伍）时回到全局仓库
+     */
+    public static String getSelectedId(ServerPlayer player) {
+        String warehouseId = selected.get(player.getUUID());
+        if (warehouseId == null) return GLOBAL;
+        if (!canAccess(player, warehouseId)) {
+            selected.remove(player.getUUID());
+            return GLOBAL;
+        }
+        return warehouseId;
+    }
+
+    public static WarehouseState getSelected(ServerPlayer player) {
+        return get(player.level().getServer(), getSelectedId(player));
+    }
+
+    /**
+     * 切换玩家使用的仓库，调用前应先用 {@link #canAccess} 检查
+     */
+    public static void select(ServerPlayer player, String warehouseId) {
+        if (warehouseId.equals(GLOBAL)) {
+            selected.remove(player.getUUID());
+        } else {
+            selected.put(player.getUUID(), warehouseId);
+        }
+        WarehouseSync.onWarehouseSelected(player, getSelected(player));
+    }
+
+    /**
+     * 在线且有权访问该仓库的玩家
+     */
+    public static List<ServerPlayer> getMembers(MinecraftServer server, String warehouseId) {
+        List<ServerPlayer> members = new ArrayList<>();
+        for (ServerPlayer player : server.getPlayerList().getPlayers()) {
+            if (canAccess(player, warehouseId)) {
+                members.add(player);
+            }
+        }
+        return members;
+    }
+
+    public static int getLoadedCount() {
+        return loaded.size();
+    }
+
+    /**
+     * 已加载仓库 ID 的副本，不刷新访问时间
+     */
+    public static List<String> getLoadedIds() {
+        return new ArrayList<>(loaded.keySet());
+    }
+
+    public static void onDisconnect(ServerPlayer player) {
+        selected.remove(player.getUUID());
+    }
+
+    /**
+     * 每个服务端 tick 结束时调用，定期卸载空闲的仓库
+     */
+    public static void onEndTick(MinecraftServer server) {
+        tick++;
+        if (tick % EVICT_CHECK_INTERVAL != 0) return;
+
+        long idleTicks = WarehouseConfig.warehouseIdleUnloadMinutes * 60L * 20L;
+        int excess = loaded.size() - WarehouseConfig.warehouseMaxLoaded;
+        WarehouseStorage storage = WarehouseState.getStorage(server);
+
+        Iterator<Map.Entry<String, Long>> it = loaded.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            boolean idle = tick - entry.getValue() >= idleTicks;
+            if (!idle && excess <= 0) break;
+
+            String warehouseId = entry.getKey();
+            if (warehouseId.equals(GLOBAL) || WarehouseSync.isInUse(warehouseId)) continue;
+            // 卸载后不再参与定期备份，先补上自上次备份以来的变化
+            WarehouseBackups.backup(storage.get(warehouseId));
+            if (storage.unload(warehouseId)) {
+                it.remove();
+                excess--;
+            }
+        }
+    }
+
+    public static void reset() {
+        loaded.clear();
+        selected.clear();
+        tick = 0;
+    }
+}
@@ -0,0 +1,94 @@
+package com.littletomato.warehouse;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import net.minecraft.core.UUIDUtil;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.saveddata.SavedData;
+import net.minecraft.world.level.saveddata.SavedDataType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 管理员创建的命名仓库及其成员名单，数据量很小，随主世界一起保存
+ */
+public class WarehouseRegistryData extends SavedData {
+
+    private final Map<String, Set<UUID>> namedMembers;
+
+    public WarehouseRegistryData() {
+        this.namedMembers = new HashMap<>();
+    }
+
+    private WarehouseRegistryData(Map<String, List<UUID>> named) {
+        this.namedMembers = new HashMap<>();
+        named.forEach((name, members) -> this.namedMembers.put(name, new HashSet<>(members)));
+    }
+
+    public boolean exists(String name) {
+        return namedMembers.containsKey(name);
+    }
+
+    public boolean isMember(String name, UUID player) {
+        Set<UUID> members = namedMembers.get(name);
+        return members != null && members.contains(player);
+    }
+
+    public Set<String> getNames() {
+        return namedMembers.keySet();
+    }
+
+    /**
+     * @return 是否新建了仓库（同名仓库已存在时返回 false）
+     */
+    public boolean create(String name) {
+        if (namedMembers.containsKey(name)) return false;
+        namedMembers.put(name, new HashSet<>());
+        setDirty();
+        return true;
+    }
+
+    /**
+     * @return 成员名单是否发生了变化
+     */
+    public boolean setMember(String name, UUID player, boolean member) {
+        Set<UUID> members = namedMembers.get(name);
+        if (members == null) return false;
+        boolean changed = member ? members.add(player) : members.remove(player);
+        if (changed) setDirty();
+        return changed;
+    }
+
+    // --- 数据持久化相关 ---
+
+    private static final Codec<WarehouseRegistryData> CODEC = RecordCodecBuilder.create(instance ->
+            instance.group(
+                    Codec.unboundedMap(Codec.STRING, UUIDUtil.CODEC.listOf()).fieldOf("named")
+                            .forGetter(data -> {
+                                Map<String, List<UUID>> named = new HashMap<>();
+                                data.namedMembers.forEach((name, members) -> named.put(name, new ArrayList<>(members)));
+                                return named;
+                            })
+            ).apply(instance, WarehouseRegistryData::new)
+    );
+
+    public static final SavedDataType<WarehouseRegistryData> TYPE = new SavedDataType<>(
+            "cloud_warehouse_registry",
+            WarehouseRegistryData::new,
+            CODEC,
+            null
+    );
+
+    public static WarehouseRegistryData get(MinecraftServer server) {
+        ServerLevel level = server.getLevel(ServerLevel.OVERWORLD);
+        if (level == null) return new WarehouseRegistryData();
+        return level.getDataStorage().computeIfAbsent(TYPE);
+    }
+}
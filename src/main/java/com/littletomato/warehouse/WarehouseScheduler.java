@@ -0,0 +1,165 @@
+package com.littletomato.warehouse;
+
+import com.littletomato.LittleTomato;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * 仓库操作调度：客户端发来的请求先进入各自玩家的队列，每个 tick 开始时在全局的时间和数量预算内
+ * 轮流从各玩家队列取一个执行，单个玩家无法占满主线程。
+ * <p>
+ * 带 key 的操作（同步、查询等只关心最新一次的请求）在队列中至多保留一个，新请求直接替换旧请求；
+ * 队列满时拒绝新操作并通知客户端降速。所有方法都在服务端主线程调用。
+ */
+public class WarehouseScheduler {
+
+    private static final class Task {
+        final String key;
+        Consumer<ServerPlayer> action;
+
+        Task(String key, Consumer<ServerPlayer> action) {
+            this.key = key;
+            this.action = action;
+        }
+    }
+
+    private static final class PlayerQueue {
+        final UUID playerId;
+        final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        final Map<String, Task> keyed = new HashMap<>();
+        // 已通知客户端降速，队列回落到一半以下前不再重复通知
+        boolean throttled = false;
+
+        PlayerQueue(UUID playerId) {
+            this.playerId = playerId;
+        }
+    }
+
+    private static final Map<UUID, PlayerQueue> queues = new HashMap<>();
+    // 有待执行操作的队列，按轮转顺序排列
+    private static final ArrayDeque<PlayerQueue> ready = new ArrayDeque<>();
+
+    /**
+     * 提交一个普通操作，队列已满时丢弃
+     *
+     * @return 是否已加入队列
+     */
+    public static boolean submit(ServerPlayer player, Consumer<ServerPlayer> action) {
+        return submit(player, null, action);
+    }
+
+    /**
+     * 提交一个操作；key 不为 null 时，队列中尚未执行的同 key 操作会被替换而不是追加
+     *
+     * @return 是否已加入队列（替换也视为成功）
+     */
+    public static boolean submit(ServerPlayer player, String key, Consumer<ServerPlayer> action) {
+        PlayerQueue queue = queues.computeIfAbsent(player.getUUID(), PlayerQueue::new);
+
+        if (key != null) {
+            Task existing = queue.keyed.get(key);
+            if (existing != null) {
+                existing.action = action;
+                return true;
+            }
+        }
+
+        if (queue.tasks.size() >= WarehouseConfig.schedulerMaxQueuedOpsPerPlayer) {
+            WarehouseMetrics.count(WarehouseMetrics.Counter.OPS_REJECTED);
+            if (!queue.throttled) {
+                queue.throttled = true;
+                ServerPlayNetworking.send(player,
+                        new WarehousePayloads.SlowDownS2CPayload(WarehouseConfig.schedulerRetryAfterTicks));
+            }
+            return false;
+        }
+
+        Task task = new Task(key, action);
+        if (queue.tasks.isEmpty()) {
+            ready.addLast(queue);
+        }
+        queue.tasks.addLast(task);
+        if (key != null) {
+            queue.keyed.put(key, task);
+        }
+        return true;
+    }
+
+    /**
+     * 撤销尚未执行的同 key 操作
+     */
+    public static void cancel(ServerPlayer player, String key) {
+        PlayerQueue queue = queues.get(player.getUUID());
+        if (queue == null) return;
+        Task task = queue.keyed.remove(key);
+        if (task != null) {
+            queue.tasks.remove(task);
+            if (queue.tasks.isEmpty()) {
+                ready.remove(queue);
+            }
+        }
+    }
+
+    /**
+     * 玩家断开连接：丢弃其所有未执行的操作
+     */
+    public static void remove(ServerPlayer player) {
+        PlayerQueue queue = queues.remove(player.getUUID());
+        if (queue != null) {
+            ready.remove(queue);
+        }
+    }
+
+    /**
+     * 每个服务端 tick 开始时调用，在预算内轮流执行各玩家的操作
+     */
+    public static void onStartTick(MinecraftServer server) {
+        if (ready.isEmpty()) return;
+
+        long deadline = System.nanoTime() + WarehouseConfig.schedulerTickBudgetMicros * 1000L;
+        int executed = 0;
+
+        while (!ready.isEmpty() && executed < WarehouseConfig.schedulerMaxOpsPerTick
+                && System.nanoTime() < deadline) {
+            PlayerQueue queue = ready.pollFirst();
+            Task task = queue.tasks.pollFirst();
+            if (task.key != null) {
+                queue.keyed.remove(task.key);
+            }
+
+            ServerPlayer player = server.getPlayerList().getPlayer(queue.playerId);
+            if (player != null) {
+                long start = System.nanoTime();
+                try {
+                    task.action.accept(player);
+                } catch (RuntimeException e) {
+                    LittleTomato.LOGGER.error("Warehouse operation for {} failed", player.getName().getString(), e);
+                }
+                WarehouseMetrics.record(WarehouseMetrics.Timer.OPERATION, start);
+                WarehouseMetrics.count(WarehouseMetrics.Counter.OPS_EXECUTED);
+            }
+            executed++;
+
+            if (queue.throttled && queue.tasks.size() <= WarehouseConfig.schedulerMaxQueuedOpsPerPlayer / 2) {
+                queue.throttled = false;
+            }
+            if (queue.tasks.isEmpty()) {
+                if (player == null) queues.remove(queue.playerId);
+            } else {
+                ready.addLast(queue);
+            }
+        }
+    }
+
+    public static void reset() {
+        queues.clear();
+        ready.clear();
+    }
+}
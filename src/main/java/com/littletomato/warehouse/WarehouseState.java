@@ -1,41 +1,89 @@
 package com.littletomato.warehouse;
 
+import com.littletomato.LittleTomato;
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2LongLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2LongMap;
+import it.unimi.dsi.fastutil.objects.Reference2LongMaps;
+import it.unimi.dsi.fastutil.objects.Reference2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.network.chat.Component;
 import net.minecraft.server.MinecraftServer;
-import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.entity.player.Inventory;
 import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.saveddata.SavedData;
 import net.minecraft.world.level.saveddata.SavedDataType;
 
-import java.util.Collections;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
 
 public class WarehouseState extends SavedData {
 
     public enum OperationResult {
-        SUCCESS,
-        NOT_STACKABLE,
-        NOT_SIMPLE,
-        INSUFFICIENT_STOCK,
-        NOT_IN_INVENTORY
+        SUCCESS("Success"),
+        NOT_STACKABLE("Only stackable items are allowed!"),
+        NOT_SIMPLE("Only simple items (no damage/NBT) can be stored!"),
+        INSUFFICIENT_STOCK("Insufficient stock in the warehouse!"),
+        NOT_IN_INVENTORY("You don't have enough simple items in your inventory!"),
+        STORAGE_FULL("The warehouse cannot hold any more of this item!"),
+        INVENTORY_FULL("Not enough inventory space for that many items!"),
+        INVALID_COUNT("The count must be positive!");
+
+        private final String message;
+
+        OperationResult(String message) {
+            this.message = message;
+        }
+
+        public Component getMessage() {
+            return Component.literal(message);
+        }
     }
 
-    private final Map<Item, Integer> items;
+    // 一次取出放不进背包时最多掉落在地上的堆叠数，超出的取出请求直接拒绝
+    private static final int MAX_DROP_STACKS = 4;
+
+    // 仓库 ID 由存储后端在加载时设置，不持久化
+    private String id = WarehouseStorage.DEFAULT_WAREHOUSE;
+    private final WarehouseStock stock;
     private long lastUpdated;
+    private long revision;
+
+    // 自上次保存以来数量变化过的物品，供按条目写入的存储后端使用
+    private final Set<Item> dirtyItems = new ReferenceOpenHashSet<>();
+
+    // 分页查询用的排序索引，首次查询时创建，不持久化
+    private WarehouseQueryIndex queryIndex;
+    // 命令补全用的前缀索引，首次补全时创建，之后随每次变化更新
+    private WarehouseCompletionIndex completionIndex;
+    // 物品标签到有库存物品的索引，首次按标签操作时创建，标签重载后重建
+    private WarehouseTagIndex tagIndex;
 
     public WarehouseState() {
-        this.items = new HashMap<>();
+        this.stock = new WarehouseStock();
         this.lastUpdated = System.currentTimeMillis();
+        this.revision = 0;
     }
 
-    public WarehouseState(Map<Item, Integer> items, long lastUpdated) {
-        this.items = new HashMap<>(items);
+    public WarehouseState(Map<Item, Long> items, long lastUpdated, long revision) {
+        this.stock = WarehouseStock.of(items);
         this.lastUpdated = lastUpdated;
+        this.revision = revision;
     }
 
     @Override
@@ -48,6 +96,87 @@ public class WarehouseState extends SavedData {
         return lastUpdated;
     }
 
+    public long getRevision() {
+        return revision;
+    }
+
+    /**
+     * 记录一次物品数量变化，推进 revision、写入预写日志，并唤醒等待该物品的仓库端口
+     *
+     * @param previous 变化前的数量，用于判断物品是否进出库存
+     */
+    private void recordChange(Item item, long previous) {
+        long count = stock.get(item);
+        revision++;
+        dirtyItems.add(item);
+        updateIndexes(item, previous, count);
+        WarehouseMetrics.count(WarehouseMetrics.Counter.STOCK_CHANGES);
+        WarehouseJournal.record(id, revision, item, count);
+        WarehousePorts.onStockChanged(id, item);
+    }
+
+    /**
+     * 取出并清空自上次保存以来变化过的物品
+     */
+    Set<Item> drainDirtyItems() {
+        if (dirtyItems.isEmpty()) return Set.of();
+        Set<Item> drained = new ReferenceOpenHashSet<>(dirtyItems);
+        dirtyItems.clear();
+        return drained;
+    }
+
+    /**
+     * 把库存整体替换为 items（用于从备份还原），在一次调用内完成；每个数量变化的物品记录一次变更
+     *
+     * @return 数量发生变化的物品种类数
+     */
+    public int restoreFrom(Map<Item, Long> items) {
+        List<Item> changed = new ArrayList<>();
+        stock.forEach((item, count) -> {
+            if (items.getOrDefault(item, 0L) != count) changed.add(item);
+        });
+        items.forEach((item, count) -> {
+            if (count > 0 && stock.get(item) == 0) changed.add(item);
+        });
+
+        for (Item item : changed) {
+            long previous = stock.get(item);
+            stock.set(item, items.getOrDefault(item, 0L));
+            recordChange(item, previous);
+        }
+        if (!changed.isEmpty()) {
+            setDirty();
+        }
+        return changed.size();
+    }
+
+    /**
+     * 重放预写日志中的一条记录：count 为变化后的数量，只应用比当前版本新的记录
+     *
+     * @return 是否应用了该记录
+     */
+    boolean replay(long recordRevision, Item item, long count) {
+        if (recordRevision <= revision) {
+            return false;
+        }
+        long previous = stock.get(item);
+        stock.set(item, count);
+        dirtyItems.add(item);
+        updateIndexes(item, previous, count);
+        revision = recordRevision;
+        setDirty();
+        return true;
+    }
+
+    /**
+     * 补全和标签索引只在物品进出库存（数量在 0 与正数之间变化）时更新，数量增减不触及索引
+     */
+    private void updateIndexes(Item item, long previous, long count) {
+        if ((previous > 0) == (count > 0)) return;
+        if (completionIndex != null) completionIndex.update(item, count > 0);
+        if (tagIndex != null) tagIndex.update(item, count > 0);
+    }
+
     /**
      * 校验物品是否合法
      */
@@ -65,58 +194,85 @@ public class WarehouseState extends SavedData {
      * 存储逻辑
      */
     public OperationResult deposit(ServerPlayer player, Item item, int count) {
+        return deposit(InventoryIndex.build(player.getInventory()), item, count);
+    }
+
+    public OperationResult deposit(InventoryIndex index, Item item, int count) {
+        if (count <= 0) return OperationResult.INVALID_COUNT;
         OperationResult check = validateItem(item, new ItemStack(item));
         if (check != OperationResult.SUCCESS) return check;
 
-        int available = 0;
-        for (int i = 0; i < player.getInventory().getContainerSize(); i++) {
-            ItemStack stack = player.getInventory().getItem(i);
-            if (stack.is(item) && stack.getComponentsPatch().isEmpty()) {
-                available += stack.getCount();
-            }
-        }
-
-        if (available < count) {
+        if (index.getTotal(item) < count) {
             return OperationResult.NOT_IN_INVENTORY;
         }
-
-        int remainingToRemove = count;
-        for (int i = 0; i < player.getInventory().getContainerSize() && remainingToRemove > 0; i++) {
-            ItemStack stack = player.getInventory().getItem(i);
-            if (stack.is(item) && stack.getComponentsPatch().isEmpty()) {
-                int toTake = Math.min(stack.getCount(), remainingToRemove);
-                stack.shrink(toTake);
-                remainingToRemove -= toTake;
-            }
+        if (!stock.canAdd(item, count)) {
+            return OperationResult.STORAGE_FULL;
         }
 
-        this.items.merge(item, count, Integer::sum);
+        index.remove(item, count);
+        recordChange(item, stock.add(item, count) - count);
         setDirty();
         return OperationResult.SUCCESS;
     }
 
+    /**
+     * 一次存入多种物品：全部校验通过后才执行
+     *
+     * @param requests 物品 -> 数量，数量必须为正
+     */
+    public OperationResult depositMany(InventoryIndex index, Map<Item, Integer> requests) {
+        for (Map.Entry<Item, Integer> request : requests.entrySet()) {
+            Item item = request.getKey();
+            if (request.getValue() <= 0) return OperationResult.INVALID_COUNT;
+            OperationResult check = validateItem(item, new ItemStack(item));
+            if (check != OperationResult.SUCCESS) return check;
+            if (index.getTotal(item) < request.getValue()) return OperationResult.NOT_IN_INVENTORY;
+            if (!stock.canAdd(item, request.getValue())) return OperationResult.STORAGE_FULL;
+        }
+
+        requests.forEach((item, count) -> {
+            index.remove(item, count);
+            recordChange(item, stock.add(item, count) - count);
+        });
+        if (!requests.isEmpty()) {
+            setDirty();
+        }
+        return OperationResult.SUCCESS;
+    }
+
     /**
      * 一键存储所有合法物品
      *
      * @return 返回存入的物品清单
      */
     public Map<Item, Integer> depositAll(ServerPlayer player) {
-        Map<Item, Integer> depositedItems = new HashMap<>();
+        return depositAll(InventoryIndex.build(player.getInventory()));
+    }
 
-        for (int i = 0; i < player.getInventory().getContainerSize(); i++) {
-            ItemStack stack = player.getInventory().getItem(i);
-            if (stack.isEmpty()) continue;
+    public Map<Item, Integer> depositAll(InventoryIndex index) {
+        return depositAll(index, item -> true);
+    }
+
+    /**
+     * 按标签一键存储：只存入带有该标签的合法物品
+     */
+    public Map<Item, Integer> depositTag(ServerPlayer player, TagKey<Item> tag) {
+        return depositAll(InventoryIndex.build(player.getInventory()),
+                item -> BuiltInRegistries.ITEM.wrapAsHolder(item).is(tag));
+    }
 
-            // 只有合法的（可堆叠且无附件）才存入
-            if (validateItem(stack.getItem(), stack) == OperationResult.SUCCESS) {
-                Item item = stack.getItem();
-                int count = stack.getCount();
+    private Map<Item, Integer> depositAll(InventoryIndex index, Predicate<Item> filter) {
+        Map<Item, Integer> depositedItems = new HashMap<>();
 
-                this.items.merge(item, count, Integer::sum);
-                depositedItems.merge(item, count, Integer::sum);
+        // 索引中只有合法的（可堆叠且无附件）物品，另外跳过会溢出的
+        for (Item item : new ArrayList<>(index.getItems())) {
+            if (!filter.test(item)) continue;
+            int count = index.getTotal(item);
+            if (count <= 0 || !stock.canAdd(item, count)) continue;
 
-                stack.setCount(0); // 清空该槽位
-            }
+            index.remove(item, count);
+            depositedItems.put(item, count);
+            recordChange(item, stock.add(item, count) - count);
         }
 
         if (!depositedItems.isEmpty()) {
@@ -129,20 +285,72 @@ public class WarehouseState extends SavedData {
      * 取出逻辑（指令）
      */
     public OperationResult withdraw(ServerPlayer player, Item item, int count) {
+        return withdraw(InventoryIndex.build(player.getInventory()), item, count,
+                leftover -> dropItems(player, item, leftover));
+    }
+
+    /**
+     * 取出到任意容器，放不下的数量交给 overflow 处理（玩家背包为掉落在脚下）
+     */
+    public OperationResult withdraw(InventoryIndex index, Item item, int count, LongConsumer overflow) {
+        if (count <= 0) return OperationResult.INVALID_COUNT;
         OperationResult check = validateItem(item, new ItemStack(item));
         if (check != OperationResult.SUCCESS) return check;
 
-        int stock = items.getOrDefault(item, 0);
-        if (stock < count) {
+        if (stock.get(item) < count) {
             return OperationResult.INSUFFICIENT_STOCK;
         }
+        if (!fitsWithDrops(index, Reference2LongMaps.singleton(item, count), 0)) {
+            return OperationResult.INVENTORY_FULL;
+        }
 
-        items.put(item, stock - count);
+        recordChange(item, stock.remove(item, count) + count);
         setDirty();
 
-        ItemStack stackToGive = new ItemStack(item, count);
-        if (!player.getInventory().add(stackToGive)) {
-            player.drop(stackToGive, false);
+        long leftover = index.insert(item, count);
+        if (leftover > 0) {
+            overflow.accept(leftover);
+        }
+        return OperationResult.SUCCESS;
+    }
+
+    /**
+     * 按标签取出 count 个：从库存最多的物品开始依次扣除，在一次调用内完成；
+     * 标签下的库存总量不足或背包放不下时不做任何改动
+     */
+    public OperationResult withdrawTag(ServerPlayer player, TagKey<Item> tag, int count) {
+        if (count <= 0) return OperationResult.INVALID_COUNT;
+        List<Item> items = new ArrayList<>(getTagIndex().getStocked(tag));
+        long total = 0;
+        for (Item item : items) {
+            total += stock.get(item);
+        }
+        if (total < count) {
+            return OperationResult.INSUFFICIENT_STOCK;
+        }
+
+        // 先规划每种物品取出的数量，确认背包放得下后再执行
+        items.sort(Comparator.comparingLong(stock::get).reversed());
+        Reference2LongLinkedOpenHashMap<Item> withdrawn = new Reference2LongLinkedOpenHashMap<>();
+        long remaining = count;
+        for (Item item : items) {
+            if (remaining == 0) break;
+            long take = Math.min(remaining, stock.get(item));
+            withdrawn.put(item, take);
+            remaining -= take;
+        }
+        InventoryIndex index = InventoryIndex.build(player.getInventory());
+        if (!fitsWithDrops(index, withdrawn, 0)) {
+            return OperationResult.INVENTORY_FULL;
+        }
+
+        for (Reference2LongMap.Entry<Item> e : withdrawn.reference2LongEntrySet()) {
+            recordChange(e.getKey(), stock.remove(e.getKey(), e.getLongValue()) + e.getLongValue());
+        }
+        setDirty();
+
+        for (Reference2LongMap.Entry<Item> e : withdrawn.reference2LongEntrySet()) {
+            giveItems(player, index, e.getKey(), e.getLongValue());
         }
         return OperationResult.SUCCESS;
     }
@@ -151,6 +359,7 @@ public class WarehouseState extends SavedData {
      * 取出逻辑（GUI）
      */
     public OperationResult depositFromSlot(ServerPlayer player, int slotId, int count) {
+        if (count <= 0) return OperationResult.INVALID_COUNT;
         if (slotId < 0 || slotId >= player.getInventory().getContainerSize()) {
             return OperationResult.NOT_IN_INVENTORY;
         }
@@ -164,26 +373,172 @@ public class WarehouseState extends SavedData {
 
         int toTake = Math.min(stack.getCount(), count);
         Item item = stack.getItem();
+        if (!stock.canAdd(item, toTake)) return OperationResult.STORAGE_FULL;
 
         // 执行扣除
         stack.shrink(toTake);
 
         // 存入仓库
-        this.items.merge(item, toTake, Integer::sum);
+        recordChange(item, stock.add(item, toTake) - toTake);
+        setDirty();
+
+        return OperationResult.SUCCESS;
+    }
+
+    /**
+     * 批量存取（GUI）：整批校验通过后才一次性执行，任一操作失败则不做任何修改
+     *
+     * @return 第一个失败操作的结果，全部成功返回 SUCCESS
+     */
+    public OperationResult applyBatch(ServerPlayer player, List<WarehousePayloads.BatchEntry> entries) {
+        Inventory inventory = player.getInventory();
+        // 模拟执行：槽位剩余数量、各物品库存净变化
+        Int2IntOpenHashMap slotRemaining = new Int2IntOpenHashMap();
+        Int2IntOpenHashMap slotTake = new Int2IntOpenHashMap();
+        Reference2LongOpenHashMap<Item> stockDelta = new Reference2LongOpenHashMap<>();
+        Reference2LongOpenHashMap<Item> toGive = new Reference2LongOpenHashMap<>();
+
+        for (WarehousePayloads.BatchEntry entry : entries) {
+            if (entry.count() <= 0) continue;
+
+            if (entry.deposit()) {
+                int slotId = entry.slotId();
+                if (slotId < 0 || slotId >= inventory.getContainerSize()) return OperationResult.NOT_IN_INVENTORY;
+
+                ItemStack stack = inventory.getItem(slotId);
+                if (stack.isEmpty()) return OperationResult.NOT_IN_INVENTORY;
+                OperationResult check = validateItem(stack.getItem(), stack);
+                if (check != OperationResult.SUCCESS) return check;
+
+                int remaining = slotRemaining.containsKey(slotId) ? slotRemaining.get(slotId) : stack.getCount();
+                // 同一槽位已在本批中取空时视为无操作（连续点击）
+                int toTake = Math.min(remaining, entry.count());
+                long delta = stockDelta.getLong(stack.getItem()) + toTake;
+                if (delta > 0 && !stock.canAdd(stack.getItem(), delta)) return OperationResult.STORAGE_FULL;
+
+                slotRemaining.put(slotId, remaining - toTake);
+                slotTake.addTo(slotId, toTake);
+                stockDelta.put(stack.getItem(), delta);
+            } else {
+                Item item = entry.item();
+                OperationResult check = validateItem(item, new ItemStack(item));
+                if (check != OperationResult.SUCCESS) return check;
+
+                long delta = stockDelta.getLong(item) - entry.count();
+                if (stock.get(item) + delta < 0) return OperationResult.INSUFFICIENT_STOCK;
+
+                stockDelta.put(item, delta);
+                toGive.addTo(item, entry.count());
+            }
+        }
+
+        if (stockDelta.isEmpty()) return OperationResult.SUCCESS;
+
+        if (!toGive.isEmpty()) {
+            // 本批中被取空的背包槽位也可以用来放取出的物品
+            int freedSlots = 0;
+            for (Int2IntMap.Entry e : slotRemaining.int2IntEntrySet()) {
+                if (e.getIntValue() == 0 && e.getIntKey() < Inventory.INVENTORY_SIZE) freedSlots++;
+            }
+            if (!fitsWithDrops(InventoryIndex.build(inventory), toGive, freedSlots)) {
+                return OperationResult.INVENTORY_FULL;
+            }
+        }
+
+        // 校验通过，正式执行：先扣槽位，再改库存，最后发放取出的物品
+        slotTake.int2IntEntrySet().fastForEach(e -> inventory.getItem(e.getIntKey()).shrink(e.getIntValue()));
+
+        for (Reference2LongMap.Entry<Item> e : stockDelta.reference2LongEntrySet()) {
+            long delta = e.getLongValue();
+            long previous = stock.get(e.getKey());
+            if (delta > 0) {
+                stock.add(e.getKey(), delta);
+            } else if (delta < 0) {
+                stock.remove(e.getKey(), -delta);
+            }
+            if (delta != 0) recordChange(e.getKey(), previous);
+        }
         setDirty();
 
+        if (!toGive.isEmpty()) {
+            InventoryIndex index = InventoryIndex.build(inventory);
+            for (Reference2LongMap.Entry<Item> e : toGive.reference2LongEntrySet()) {
+                giveItems(player, index, e.getKey(), e.getLongValue());
+            }
+        }
         return OperationResult.SUCCESS;
     }
 
+    /**
+     * 一次性应用一批库存净变化（自动化事务提交时调用），只标记一次脏位。
+     * 调用方负责保证扣除后不为负、增加后不溢出
+     *
+     * @return 是否有物品数量发生了变化
+     */
+    boolean applyDeltas(Reference2LongMap<Item> deltas) {
+        boolean changed = false;
+        for (Reference2LongMap.Entry<Item> e : deltas.reference2LongEntrySet()) {
+            long delta = e.getLongValue();
+            long previous = stock.get(e.getKey());
+            if (delta > 0) {
+                stock.add(e.getKey(), delta);
+            } else if (delta < 0) {
+                stock.remove(e.getKey(), -delta);
+            } else {
+                continue;
+            }
+            recordChange(e.getKey(), previous);
+            changed = true;
+        }
+        if (changed) {
+            setDirty();
+        }
+        return changed;
+    }
+
+    /**
+     * 取出的物品放入背包后，掉落在地上的堆叠是否不超过 MAX_DROP_STACKS，
+     * 防止一次取出生成大量掉落物实体。freedSlots 为本次操作中将被取空的槽位数
+     */
+    private static boolean fitsWithDrops(InventoryIndex index, Reference2LongMap<Item> toGive, int freedSlots) {
+        long stacks = 0;
+        for (Reference2LongMap.Entry<Item> e : toGive.reference2LongEntrySet()) {
+            long beyond = e.getLongValue() - index.getStackRoom(e.getKey());
+            if (beyond > 0) {
+                int maxStack = e.getKey().getDefaultMaxStackSize();
+                stacks += (beyond + maxStack - 1) / maxStack;
+            }
+        }
+        return stacks <= (long) index.getEmptySlotCount() + freedSlots + MAX_DROP_STACKS;
+    }
+
+    /**
+     * 放入背包，放不下的按最大堆叠拆分后掉落在玩家脚下
+     */
+    private static void giveItems(ServerPlayer player, InventoryIndex index, Item item, long count) {
+        dropItems(player, item, index.insert(item, count));
+    }
+
+    private static void dropItems(ServerPlayer player, Item item, long leftover) {
+        int maxStack = item.getDefaultMaxStackSize();
+        while (leftover > 0) {
+            int size = (int) Math.min(leftover, maxStack);
+            player.drop(new ItemStack(item, size), false);
+            leftover -= size;
+        }
+    }
+
     // --- 数据持久化相关 ---
 
-    private static final Codec<Map<Item, Integer>> MAP_CODEC =
-            Codec.unboundedMap(BuiltInRegistries.ITEM.byNameCodec(), Codec.INT);
+    // 数量按 long 读写；旧存档中的 int 数量同样可以被 Codec.LONG 读取
+    private static final Codec<Map<Item, Long>> MAP_CODEC =
+            Codec.unboundedMap(BuiltInRegistries.ITEM.byNameCodec(), Codec.LONG);
 
     private static final Codec<WarehouseState> CODEC = RecordCodecBuilder.create(instance ->
             instance.group(
-                    MAP_CODEC.fieldOf("items").forGetter(s -> s.items),
-                    Codec.LONG.fieldOf("lastUpdated").forGetter(s -> s.lastUpdated)
+                    MAP_CODEC.fieldOf("items").forGetter(s -> s.stock.asMap()),
+                    Codec.LONG.fieldOf("lastUpdated").forGetter(s -> s.lastUpdated),
+                    Codec.LONG.optionalFieldOf("revision", 0L).forGetter(s -> s.revision)
             ).apply(instance, WarehouseState::new)
     );
 
@@ -194,13 +549,108 @@ public class WarehouseState extends SavedData {
             null
     );
 
+    // 当前使用的存储后端，服务器启动时按配置打开
+    private static WarehouseStorage storage = null;
+
+    // 各仓库的 SavedData 类型，同一仓库总是使用同一个实例
+    private static final Map<String, SavedDataType<WarehouseState>> SAVED_DATA_TYPES = new ConcurrentHashMap<>();
+
+    /**
+     * 指定仓库在 SavedData 后端中的数据类型，默认仓库沿用原来的 cloud_warehouse_state
+     */
+    static SavedDataType<WarehouseState> savedDataType(String warehouseId) {
+        if (warehouseId.equals(WarehouseStorage.DEFAULT_WAREHOUSE)) return TYPE;
+        // 文件名中不能出现冒号
+        return SAVED_DATA_TYPES.computeIfAbsent(warehouseId, id -> new SavedDataType<>(
+                "cloud_warehouse_state_" + id.replace(':', '_'), WarehouseState::new, CODEC, null));
+    }
+
+    public static void openStorage(MinecraftServer server) {
+        closeStorage();
+        if (WarehouseConfig.storageBackend == WarehouseStorage.Backend.MVSTORE) {
+            try {
+                storage = new MVStoreWarehouseStorage(server);
+                return;
+            } catch (IOException | RuntimeException e) {
+                LittleTomato.LOGGER.error("Failed to open MVStore warehouse storage, falling back to SavedData", e);
+            }
+        }
+        storage = new SavedDataWarehouseStorage(server);
+    }
+
+    public static void closeStorage() {
+        if (storage != null) {
+            storage.close();
+            storage = null;
+        }
+    }
+
+    /**
+     * 世界保存后调用，让存储后端写出变化
+     */
+    public static void saveStorage() {
+        if (storage != null) {
+            long start = System.nanoTime();
+            storage.save();
+            WarehouseMetrics.record(WarehouseMetrics.Timer.STORAGE_SAVE, start);
+        }
+    }
+
+    static WarehouseStorage getStorage(MinecraftServer server) {
+        if (storage == null) {
+            storage = new SavedDataWarehouseStorage(server);
+        }
+        return storage;
+    }
+
+    /**
+     * 全局仓库；玩家操作应使用 {@link WarehouseRegistry#getSelected} 获取其当前选择的仓库
+     */
     public static WarehouseState getCloudWarehouseState(MinecraftServer server) {
-        ServerLevel level = server.getLevel(ServerLevel.OVERWORLD);
-        if (level == null) return new WarehouseState();
-        return level.getDataStorage().computeIfAbsent(TYPE);
+        return WarehouseRegistry.get(server, WarehouseRegistry.GLOBAL);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    void setId(String id) {
+        this.id = id;
+    }
+
+    /**
+     * 库存的只读视图（不含数量为 0 的条目）
+     */
+    public Map<Item, Long> getItems() {
+        return stock.asMap();
+    }
+
+    public long getStock(Item item) {
+        return stock.get(item);
+    }
+
+    public WarehouseQueryIndex getQueryIndex() {
+        if (queryIndex == null) {
+            queryIndex = new WarehouseQueryIndex(this);
+        }
+        return queryIndex;
+    }
+
+    public WarehouseCompletionIndex getCompletionIndex() {
+        if (completionIndex == null) {
+            completionIndex = new WarehouseCompletionIndex(this);
+        }
+        return completionIndex;
+    }
+
+    public WarehouseTagIndex getTagIndex() {
+        if (tagIndex == null || tagIndex.isStale()) {
+            tagIndex = new WarehouseTagIndex(this);
+        }
+        return tagIndex;
     }
 
-    public Map<Item, Integer> getItems() {
-        return Collections.unmodifiableMap(items);
+    WarehouseStock stock() {
+        return stock;
     }
 }
\ No newline at end of file
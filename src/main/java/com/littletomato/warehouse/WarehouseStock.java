@@ -0,0 +1,178 @@
+package com.littletomato.warehouse;
+
+import it.unimi.dsi.fastutil.ints.Int2LongMap;
+import it.unimi.dsi.fastutil.ints.Int2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.item.Item;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * 仓库库存的原始类型存储：以物品注册表 raw id 为键、64 位计数为值，数量归零的条目直接移除。
+ * raw id 只在运行期使用，持久化时仍按物品 ID 字符串保存。
+ */
+public class WarehouseStock {
+
+    private final Int2LongOpenHashMap counts = new Int2LongOpenHashMap();
+    private final Map<Item, Long> view = new ItemView();
+    // 物品种类集合每次增删时递增，只有数量变化时不变，排序索引据此判断是否需要重建
+    private int keySetVersion = 0;
+
+    public WarehouseStock() {
+        counts.defaultReturnValue(0L);
+    }
+
+    public static WarehouseStock of(Map<Item, ? extends Number> items) {
+        WarehouseStock stock = new WarehouseStock();
+        items.forEach((item, count) -> {
+            if (count.longValue() > 0) {
+                stock.counts.put(BuiltInRegistries.ITEM.getId(item), count.longValue());
+            }
+        });
+        return stock;
+    }
+
+    public long get(Item item) {
+        return counts.get(BuiltInRegistries.ITEM.getId(item));
+    }
+
+    /**
+     * 是否还能再存入 amount 个而不溢出
+     */
+    public boolean canAdd(Item item, long amount) {
+        return amount <= Long.MAX_VALUE - get(item);
+    }
+
+    /**
+     * 增加库存，调用前应先用 {@link #canAdd} 检查
+     *
+     * @return 新的库存数量
+     */
+    public long add(Item item, long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Cannot add a negative amount of " + item);
+        }
+        long previous = counts.addTo(BuiltInRegistries.ITEM.getId(item), amount);
+        if (previous == 0) keySetVersion++;
+        return previous + amount;
+    }
+
+    /**
+     * 扣除库存，数量归零时移除条目
+     *
+     * @return 新的库存数量
+     */
+    public long remove(Item item, long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Cannot remove a negative amount of " + item);
+        }
+        int id = BuiltInRegistries.ITEM.getId(item);
+        long remaining = counts.get(id) - amount;
+        if (remaining < 0) {
+            throw new IllegalStateException("Stock of " + item + " would become negative");
+        }
+        if (remaining == 0) {
+            counts.remove(id);
+            keySetVersion++;
+        } else {
+            counts.put(id, remaining);
+        }
+        return remaining;
+    }
+
+    /**
+     * 直接设置库存数量，0 表示移除
+     */
+    public void set(Item item, long count) {
+        int id = BuiltInRegistries.ITEM.getId(item);
+        boolean existed = counts.containsKey(id);
+        if (count <= 0) {
+            counts.remove(id);
+        } else {
+            counts.put(id, count);
+        }
+        if (existed != count > 0) keySetVersion++;
+    }
+
+    public int size() {
+        return counts.size();
+    }
+
+    public int getKeySetVersion() {
+        return keySetVersion;
+    }
+
+    public boolean isEmpty() {
+        return counts.isEmpty();
+    }
+
+    public void forEach(ObjLongConsumer<Item> consumer) {
+        ObjectIterator<Int2LongMap.Entry> it = counts.int2LongEntrySet().fastIterator();
+        while (it.hasNext()) {
+            Int2LongMap.Entry entry = it.next();
+            consumer.accept(BuiltInRegistries.ITEM.byId(entry.getIntKey()), entry.getLongValue());
+        }
+    }
+
+    /**
+     * 只读的 Map 视图，不复制数据
+     */
+    public Map<Item, Long> asMap() {
+        return view;
+    }
+
+    private class ItemView extends AbstractMap<Item, Long> {
+        private final Set<Entry<Item, Long>> entrySet = new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<Item, Long>> iterator() {
+                ObjectIterator<Int2LongMap.Entry> it = counts.int2LongEntrySet().fastIterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Entry<Item, Long> next() {
+                        Int2LongMap.Entry entry = it.next();
+                        return new SimpleImmutableEntry<>(BuiltInRegistries.ITEM.byId(entry.getIntKey()),
+                                entry.getLongValue());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return counts.size();
+            }
+        };
+
+        @Override
+        public Set<Entry<Item, Long>> entrySet() {
+            return entrySet;
+        }
+
+        @Override
+        public Long get(Object key) {
+            if (!(key instanceof Item item)) return null;
+            int id = BuiltInRegistries.ITEM.getId(item);
+            return counts.containsKey(id) ? counts.get(id) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Item item && counts.containsKey(BuiltInRegistries.ITEM.getId(item));
+        }
+
+        @Override
+        public int size() {
+            return counts.size();
+        }
+    }
+}
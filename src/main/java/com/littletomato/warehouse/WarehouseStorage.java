@@ -0,0 +1,38 @@
+package com.littletomato.warehouse;
+
+/**
+ * 仓库的持久化后端。仓库按 ID 区分，首次访问时才加载；所有方法都在服务端主线程调用。
+ */
+public interface WarehouseStorage {
+
+    String DEFAULT_WAREHOUSE = "default";
+
+    enum Backend {
+        // 保存在主世界的 SavedData 中，每次保存写出整个仓库
+        SAVED_DATA,
+        // 保存在世界目录下的 MVStore 文件中，每次保存只写出变化的条目
+        MVSTORE
+    }
+
+    /**
+     * 获取仓库，尚未加载时从存储中读取，不存在时创建空仓库
+     */
+    WarehouseState get(String warehouseId);
+
+    /**
+     * 把仓库移出内存，下次访问时重新加载
+     *
+     * @return 是否已卸载；仓库有尚未写出的变化、暂时不能卸载时返回 false
+     */
+    boolean unload(String warehouseId);
+
+    /**
+     * 世界保存后调用，把自上次保存以来的变化写入存储
+     */
+    void save();
+
+    /**
+     * 服务器停止时调用，写出剩余的变化并释放资源
+     */
+    void close();
+}
@@ -0,0 +1,151 @@
+package com.littletomato.warehouse;
+
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.item.Item;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 仓库同步：只向打开仓库界面的玩家推送更新，按其最近一次分页查询重新推送窗口，客户端从不持有完整库存。
+ * 同一 tick 内的多次变更只标记脏位，在 tick 结束时合并成一次推送。
+ * 每个订阅者只接收其当前选择的仓库的更新。
+ */
+public class WarehouseSync {
+
+    private static final class Subscriber {
+        // 订阅的仓库
+        String warehouseId;
+        // 最近一次推送给该玩家的仓库版本
+        long knownRevision;
+        // 最近一次分页查询
+        WarehousePayloads.WarehouseQueryC2SPayload query;
+
+        Subscriber(String warehouseId, WarehousePayloads.WarehouseQueryC2SPayload query) {
+            this.warehouseId = warehouseId;
+            this.query = query;
+        }
+    }
+
+    private static final Map<UUID, Subscriber> subscribers = new HashMap<>();
+
+    // 自上次推送以来变化过的仓库
+    private static final Set<String> dirty = new HashSet<>();
+    private static int ticksSinceFlush = 0;
+
+    /**
+     * 玩家在仓库界面中查询一段窗口：立即回复，之后仓库变化时重新推送同一窗口
+     */
+    public static void query(ServerPlayer player, WarehouseState state,
+                             WarehousePayloads.WarehouseQueryC2SPayload query) {
+        Subscriber subscriber = subscribers.computeIfAbsent(player.getUUID(), uuid -> new Subscriber(state.getId(), query));
+        subscriber.warehouseId = state.getId();
+        subscriber.query = query;
+        subscriber.knownRevision = state.getRevision();
+        ServerPlayNetworking.send(player, createPage(state, query));
+        WarehouseMetrics.count(WarehouseMetrics.Counter.PACKETS_SENT);
+    }
+
+    /**
+     * 玩家关闭仓库界面或断开连接：不再推送实时更新
+     */
+    public static void unsubscribe(ServerPlayer player) {
+        subscribers.remove(player.getUUID());
+    }
+
+    /**
+     * 玩家切换了仓库：立即推送新仓库中同一查询的窗口
+     */
+    public static void onWarehouseSelected(ServerPlayer player, WarehouseState state) {
+        Subscriber subscriber = subscribers.get(player.getUUID());
+        if (subscriber == null || subscriber.warehouseId.equals(state.getId())) return;
+
+        query(player, state, subscriber.query);
+    }
+
+    /**
+     * 标记仓库已变化，等待 tick 结束时统一推送
+     */
+    public static void markDirty(String warehouseId) {
+        dirty.add(warehouseId);
+    }
+
+    /**
+     * 是否有玩家订阅着该仓库，或有尚未推送的变化；这样的仓库不应被卸载
+     */
+    public static boolean isInUse(String warehouseId) {
+        if (dirty.contains(warehouseId)) return true;
+        for (Subscriber subscriber : subscribers.values()) {
+            if (subscriber.warehouseId.equals(warehouseId)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 每个服务端 tick 结束时调用，满足最小间隔后推送积累的变更
+     */
+    public static void onEndTick(MinecraftServer server) {
+        ticksSinceFlush++;
+        if (dirty.isEmpty() || ticksSinceFlush < WarehouseConfig.syncMinFlushIntervalTicks) return;
+
+        long start = System.nanoTime();
+        ticksSinceFlush = 0;
+        for (String warehouseId : dirty) {
+            broadcast(server, warehouseId);
+        }
+        dirty.clear();
+        WarehouseMetrics.record(WarehouseMetrics.Timer.SYNC_FLUSH, start);
+    }
+
+    /**
+     * 向该仓库的所有订阅者重新推送其查询的窗口
+     */
+    private static void broadcast(MinecraftServer server, String warehouseId) {
+        if (subscribers.isEmpty()) return;
+
+        WarehouseState state = WarehouseRegistry.getIfLoaded(server, warehouseId);
+        if (state == null) return;
+
+        for (Map.Entry<UUID, Subscriber> entry : subscribers.entrySet()) {
+            Subscriber subscriber = entry.getValue();
+            if (!subscriber.warehouseId.equals(warehouseId)) continue;
+            if (subscriber.knownRevision == state.getRevision()) continue;
+
+            ServerPlayer player = server.getPlayerList().getPlayer(entry.getKey());
+            // 已失去访问权限（如离开了队伍）的玩家不再接收该仓库的更新
+            if (player == null || !WarehouseRegistry.canAccess(player, warehouseId)) continue;
+
+            ServerPlayNetworking.send(player, createPage(state, subscriber.query));
+            WarehouseMetrics.count(WarehouseMetrics.Counter.PACKETS_SENT);
+            subscriber.knownRevision = state.getRevision();
+            WarehouseMetrics.count(WarehouseMetrics.Counter.PLAYERS_NOTIFIED);
+        }
+    }
+
+    public static void reset() {
+        subscribers.clear();
+        dirty.clear();
+        ticksSinceFlush = 0;
+    }
+
+    private static WarehousePayloads.WarehousePageS2CPayload createPage(WarehouseState state,
+                                                                       WarehousePayloads.WarehouseQueryC2SPayload query) {
+        int limit = Math.min(query.limit(), WarehousePayloads.WarehouseQueryC2SPayload.MAX_LIMIT);
+        WarehouseQueryIndex.Window window = state.getQueryIndex().query(query.filter(), query.sort(), query.offset(),
+                limit);
+
+        List<WarehousePayloads.PageEntry> entries = new ArrayList<>(window.items().size());
+        for (Item item : window.items()) {
+            entries.add(new WarehousePayloads.PageEntry(item, state.getStock(item)));
+        }
+        return new WarehousePayloads.WarehousePageS2CPayload(query.requestId(), state.getRevision(),
+                state.getLastUpdated(), window.total(), window.offset(), entries);
+    }
+}
@@ -0,0 +1,77 @@
+package com.littletomato.warehouse;
+
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.item.Item;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 物品标签到有库存物品的索引，随每次库存变化增量更新；数据包重载后标签内容可能改变，
+ * 旧索引在下次使用时整体重建。按标签的命令只需访问该标签下的有库存物品，不扫描注册表或整个仓库
+ */
+public class WarehouseTagIndex {
+
+    // 每次标签重载后递增
+    private static int tagGeneration = 0;
+
+    private final int generation;
+    // 只保留至少有一种物品在库的标签
+    private final Map<TagKey<Item>, Set<Item>> stocked = new HashMap<>();
+
+    WarehouseTagIndex(WarehouseState state) {
+        this.generation = tagGeneration;
+        state.stock().forEach((item, count) -> add(item));
+    }
+
+    /**
+     * 服务端标签重载后调用，使所有仓库的索引失效
+     */
+    public static void onTagsReloaded() {
+        tagGeneration++;
+    }
+
+    boolean isStale() {
+        return generation != tagGeneration;
+    }
+
+    /**
+     * 物品进出库存时调用：数量变为 0 时从其所有标签中移除，从 0 变为正数时加入；数量增减不必调用
+     */
+    void update(Item item, boolean inStock) {
+        if (inStock) {
+            add(item);
+            return;
+        }
+        BuiltInRegistries.ITEM.wrapAsHolder(item).tags().forEach(tag -> {
+            Set<Item> items = stocked.get(tag);
+            if (items != null && items.remove(item) && items.isEmpty()) {
+                stocked.remove(tag);
+            }
+        });
+    }
+
+    private void add(Item item) {
+        BuiltInRegistries.ITEM.wrapAsHolder(item).tags()
+                .forEach(tag -> stocked.computeIfAbsent(tag, k -> new ReferenceOpenHashSet<>()).add(item));
+    }
+
+    /**
+     * 带有该标签且有库存的物品（只读视图）
+     */
+    public Set<Item> getStocked(TagKey<Item> tag) {
+        Set<Item> items = stocked.get(tag);
+        return items == null ? Set.of() : Collections.unmodifiableSet(items);
+    }
+
+    /**
+     * 至少有一种物品在库的标签（只读视图）
+     */
+    public Set<TagKey<Item>> getTags() {
+        return Collections.unmodifiableSet(stocked.keySet());
+    }
+}
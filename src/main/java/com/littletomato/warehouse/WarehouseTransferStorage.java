@@ -0,0 +1,191 @@
+package com.littletomato.warehouse;
+
+import com.littletomato.LittleTomato;
+import it.unimi.dsi.fastutil.objects.Reference2LongOpenHashMap;
+import net.fabricmc.fabric.api.transfer.v1.item.ItemVariant;
+import net.fabricmc.fabric.api.transfer.v1.storage.Storage;
+import net.fabricmc.fabric.api.transfer.v1.storage.StoragePreconditions;
+import net.fabricmc.fabric.api.transfer.v1.storage.StorageView;
+import net.fabricmc.fabric.api.transfer.v1.transaction.TransactionContext;
+import net.fabricmc.fabric.api.transfer.v1.transaction.base.SnapshotParticipant;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.item.Item;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 通过 Fabric Transfer API 暴露的仓库，供漏斗和管道模组存取。
+ * <p>
+ * 事务中的存取只记在本对象的净变化表里，不直接修改仓库；最外层事务提交时才一次性写入仓库，
+ * 每种物品只推进一次 revision、整批只标记一次脏位和一次同步推送。事务中止时恢复快照即可，
+ * 仓库本身从未被修改。同一仓库的所有接口方块共用一个实例，保证同一事务内不会重复取出同一份库存。
+ */
+public class WarehouseTransferStorage extends SnapshotParticipant<Reference2LongOpenHashMap<Item>>
+        implements Storage<ItemVariant> {
+
+    private static final Map<String, WarehouseTransferStorage> storages = new HashMap<>();
+
+    private final MinecraftServer server;
+    private final String warehouseId;
+
+    // 当前事务中各物品的库存净变化，事务外总是为空
+    private Reference2LongOpenHashMap<Item> pending = new Reference2LongOpenHashMap<>();
+
+    // 按库存键集合版本缓存的物品列表，供 iterator 使用
+    private List<Item> cachedItems = List.of();
+    private WarehouseState cachedState = null;
+    private int cachedKeySetVersion = -1;
+
+    private WarehouseTransferStorage(MinecraftServer server, String warehouseId) {
+        this.server = server;
+        this.warehouseId = warehouseId;
+    }
+
+    public static WarehouseTransferStorage get(MinecraftServer server, String warehouseId) {
+        return storages.computeIfAbsent(warehouseId, id -> new WarehouseTransferStorage(server, id));
+    }
+
+    public static void reset() {
+        storages.clear();
+    }
+
+    /**
+     * 与 {@link WarehouseState#validateItem} 相同的规则：只接受可堆叠且无附加组件的物品
+     */
+    private static boolean isStorable(ItemVariant resource) {
+        return resource.getItem().getDefaultMaxStackSize() > 1 && !resource.hasComponents();
+    }
+
+    private WarehouseState state() {
+        return WarehouseRegistry.get(server, warehouseId);
+    }
+
+    private long getAmount(WarehouseState state, Item item) {
+        return state.getStock(item) + pending.getLong(item);
+    }
+
+    @Override
+    public long insert(ItemVariant resource, long maxAmount, TransactionContext transaction) {
+        StoragePreconditions.notBlankNotNegative(resource, maxAmount);
+        if (!isStorable(resource)) return 0;
+
+        Item item = resource.getItem();
+        long inserted = Math.min(maxAmount, Long.MAX_VALUE - getAmount(state(), item));
+        if (inserted > 0) {
+            updateSnapshots(transaction);
+            pending.addTo(item, inserted);
+        }
+        return inserted;
+    }
+
+    @Override
+    public long extract(ItemVariant resource, long maxAmount, TransactionContext transaction) {
+        StoragePreconditions.notBlankNotNegative(resource, maxAmount);
+        if (!isStorable(resource)) return 0;
+
+        Item item = resource.getItem();
+        long extracted = Math.min(maxAmount, getAmount(state(), item));
+        if (extracted > 0) {
+            updateSnapshots(transaction);
+            pending.addTo(item, -extracted);
+        }
+        return extracted;
+    }
+
+    @Override
+    public Iterator<StorageView<ItemVariant>> iterator() {
+        WarehouseState state = state();
+        int version = state.stock().getKeySetVersion();
+        if (state != cachedState || version != cachedKeySetVersion) {
+            cachedItems = List.copyOf(state.getItems().keySet());
+            cachedState = state;
+            cachedKeySetVersion = version;
+        }
+
+        List<Item> items = cachedItems;
+        if (!pending.isEmpty()) {
+            // 本事务中新存入、仓库里原本没有的物品
+            items = new ArrayList<>(cachedItems);
+            for (Item item : pending.keySet()) {
+                if (state.getStock(item) == 0 && pending.getLong(item) > 0) {
+                    items.add(item);
+                }
+            }
+        }
+
+        Iterator<Item> it = items.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public StorageView<ItemVariant> next() {
+                return new View(it.next());
+            }
+        };
+    }
+
+    @Override
+    protected Reference2LongOpenHashMap<Item> createSnapshot() {
+        return pending.clone();
+    }
+
+    @Override
+    protected void readSnapshot(Reference2LongOpenHashMap<Item> snapshot) {
+        pending = snapshot;
+    }
+
+    @Override
+    protected void onFinalCommit() {
+        if (pending.isEmpty()) return;
+
+        WarehouseState state = state();
+        if (state.applyDeltas(pending)) {
+            LittleTomato.broadcastUpdate(server, state);
+        }
+        WarehouseMetrics.count(WarehouseMetrics.Counter.TRANSFER_COMMITS);
+        pending = new Reference2LongOpenHashMap<>();
+    }
+
+    private class View implements StorageView<ItemVariant> {
+
+        private final Item item;
+
+        View(Item item) {
+            this.item = item;
+        }
+
+        @Override
+        public long extract(ItemVariant resource, long maxAmount, TransactionContext transaction) {
+            if (resource.getItem() != item) return 0;
+            return WarehouseTransferStorage.this.extract(resource, maxAmount, transaction);
+        }
+
+        @Override
+        public boolean isResourceBlank() {
+            // 本事务中已取空的物品仍报告为原物品、数量 0
+            return false;
+        }
+
+        @Override
+        public ItemVariant getResource() {
+            return ItemVariant.of(item);
+        }
+
+        @Override
+        public long getAmount() {
+            return WarehouseTransferStorage.this.getAmount(state(), item);
+        }
+
+        @Override
+        public long getCapacity() {
+            return Long.MAX_VALUE;
+        }
+    }
+}